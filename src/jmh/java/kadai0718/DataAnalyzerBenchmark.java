@@ -0,0 +1,158 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// DataAnalyzer の読み込みと各分析のベンチマーク
+// 入力は SalesDataGenerator で固定シードから生成するので、変更の前後で同じデータの数値を比較できる。
+//
+// 実行: mvn -P jmh package && java -jar target/benchmarks.jar DataAnalyzerBenchmark
+//       行数を変える場合: java -jar target/benchmarks.jar DataAnalyzerBenchmark -p rows=10000000
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DataAnalyzerBenchmark {
+    private static final long SEED = 42;
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2024, 7, 2, 0, 0, 0);
+
+    @Param({"1000000"})
+    public long rows;
+
+    private Path csvFile;
+    private String csvPath;
+    private List<SaleRecord> sales;
+    private SalesTable table;
+    private SalesTimeIndex timeIndex;
+    private String[] lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csvFile = Files.createTempFile("sales-bench-", ".csv");
+        csvPath = csvFile.toString();
+        new SalesDataGenerator(SEED).generate(csvFile, rows);
+        sales = DataAnalyzer.loadDataFast(csvPath);
+        table = SalesTable.fromRecords(sales);
+        timeIndex = SalesTimeIndex.build(table);
+        // parseSaleRecord 用に先頭の一部の行を文字列で保持する（ヘッダー行は除く）
+        try (var stream = Files.lines(csvFile, StandardCharsets.UTF_8)) {
+            lines = stream.skip(1).limit(1024).toArray(String[]::new);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csvFile);
+    }
+
+    // ===== 読み込み =====
+
+    @Benchmark
+    public List<SaleRecord> loadData() {
+        return DataAnalyzer.loadData(csvPath);
+    }
+
+    @Benchmark
+    public List<SaleRecord> loadDataFast() {
+        return DataAnalyzer.loadDataFast(csvPath);
+    }
+
+    @Benchmark
+    public List<SaleRecord> loadDataParallel() {
+        return DataAnalyzer.loadDataParallel(csvPath);
+    }
+
+    @Benchmark
+    public SalesTable loadTable() throws IOException {
+        return SalesTable.load(csvFile);
+    }
+
+    // 1024行を解析する時間（1行あたりは結果を1024で割る）
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void parseSaleRecord(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(DataAnalyzer.parseSaleRecord(line));
+        }
+    }
+
+    // ===== mainの分析（SaleRecordのリストに対するストリーム） =====
+
+    @Benchmark
+    public Map<String, Long> categorySales() {
+        return DataAnalyzer.categorySales(sales);
+    }
+
+    @Benchmark
+    public List<SaleRecord> salesAfterCutoff() {
+        return DataAnalyzer.salesAfter(sales, CUTOFF);
+    }
+
+    @Benchmark
+    public Optional<SaleRecord> topSellingProduct() {
+        return DataAnalyzer.topSellingProduct(sales);
+    }
+
+    @Benchmark
+    public List<String> beverageDetails() {
+        return DataAnalyzer.salesDetails(sales, "飲料");
+    }
+
+    // ===== 同じ分析の列指向テーブル版 =====
+
+    @Benchmark
+    public Map<String, Long> categorySalesColumnar() {
+        return table.categoryTotals();
+    }
+
+    @Benchmark
+    public int[] salesAfterCutoffColumnar() {
+        return table.rowsAtOrAfterNewestFirst(CUTOFF);
+    }
+
+    @Benchmark
+    public int[] salesAfterCutoffTimeIndex() {
+        return timeIndex.range(CUTOFF, null).toArray(true);
+    }
+
+    @Benchmark
+    public int topSellingProductColumnar() {
+        return table.maxQuantityRow();
+    }
+
+    @Benchmark
+    public LongGroupBy productSalesAggregator() {
+        return SalesAggregator.revenueBy(table, SalesAggregator.Dimension.PRODUCT);
+    }
+
+    @Benchmark
+    public SalesQuery.QueryResult categorySalesQuery() {
+        return SalesQuery.from(table)
+                .groupBy(SalesQuery.Column.CATEGORY, SalesQuery.Column.AMOUNT)
+                .execute();
+    }
+}
@@ -24,6 +24,7 @@ public class BorrowRecord {
     }
 
     public LibraryItem getItem() { return item; }
+    public LocalDate getBorrowDate() { return borrowDate; }
     public LocalDate getDueDate() { return dueDate; }
     public LocalDate getReturnDate() { return returnDate; }
 }
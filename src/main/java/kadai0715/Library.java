@@ -1,27 +1,138 @@
 package kadai0715;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public class Library {
     private String name;                    // 図書館名
-    private List<LibraryItem> items;        // 所蔵アイテムのリスト
+    private Map<String, LibraryItem> items; // 所蔵アイテム（IDで引けるハッシュ表。登録順を保つ）
+    // 検索用の索引（キー → アイテムの集合）。アイテムの追加・削除のたびに更新する
+    private Map<String, Set<LibraryItem>> itemsByTitle;
+    private Map<String, Set<LibraryItem>> itemsByCategory;
+    private Map<String, Set<LibraryItem>> itemsByPublisher;
+    private Map<String, Set<LibraryItem>> itemsByAuthor;    // 書籍のみ
+    private SearchIndex searchIndex;        // タイトル・著者の全文検索用の索引
     private List<Member> members;           // 会員リスト
     private List<BorrowRecord> allBorrowRecords; // 全貸出履歴（今回は未使用ですが拡張用）
 
     public Library(String name) {
         this.name = name;
-        this.items = new ArrayList<>();
+        this.items = new LinkedHashMap<>();
+        this.itemsByTitle = new HashMap<>();
+        this.itemsByCategory = new HashMap<>();
+        this.itemsByPublisher = new HashMap<>();
+        this.itemsByAuthor = new HashMap<>();
+        this.searchIndex = new SearchIndex();
         this.members = new ArrayList<>();
         this.allBorrowRecords = new ArrayList<>();
     }
 
     // 図書館にアイテムを追加
     public void addItem(LibraryItem item) {
-        items.add(item);
+        // 同じIDのアイテムは登録できない（索引が食い違わないように）
+        if (items.containsKey(item.getId())) {
+            System.out.println("ID「" + item.getId() + "」のアイテムは既に登録されています");
+            return;
+        }
+        items.put(item.getId(), item);
+        addToIndex(itemsByTitle, item.getTitle(), item);
+        addToIndex(itemsByCategory, item.getCategory(), item);
+        addToIndex(itemsByPublisher, item.getPublisher(), item);
+        if (item instanceof Book) {
+            addToIndex(itemsByAuthor, ((Book) item).getAuthor(), item);
+        }
+        searchIndex.add(item);
         System.out.println("「" + item.getTitle() + "」を図書館に追加しました");
     }
 
+    // 図書館からアイテムを削除
+    public boolean removeItem(LibraryItem item) {
+        // 同じIDの別のアイテムを消さないよう、登録されているものと同じインスタンスか確認
+        if (items.get(item.getId()) != item) {
+            System.out.println("指定されたアイテムは図書館にありません");
+            return false;
+        }
+        items.remove(item.getId());
+        removeFromIndex(itemsByTitle, item.getTitle(), item);
+        removeFromIndex(itemsByCategory, item.getCategory(), item);
+        removeFromIndex(itemsByPublisher, item.getPublisher(), item);
+        if (item instanceof Book) {
+            removeFromIndex(itemsByAuthor, ((Book) item).getAuthor(), item);
+        }
+        searchIndex.remove(item);
+        System.out.println("「" + item.getTitle() + "」を図書館から削除しました");
+        return true;
+    }
+
+    // 索引にアイテムを追加（キーがnullのものは索引に入れない）
+    private static void addToIndex(Map<String, Set<LibraryItem>> index, String key, LibraryItem item) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(item);
+        }
+    }
+
+    // 索引からアイテムを削除（空になったキーは消す）
+    private static void removeFromIndex(Map<String, Set<LibraryItem>> index, String key, LibraryItem item) {
+        Set<LibraryItem> set = index.get(key);
+        if (set != null) {
+            set.remove(item);
+            if (set.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    // 索引から該当するアイテムの一覧を返す（登録順）
+    private static List<LibraryItem> lookup(Map<String, Set<LibraryItem>> index, String key) {
+        Set<LibraryItem> set = index.get(key);
+        if (set == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(set);
+    }
+
+    // IDでアイテムを探す
+    public Optional<LibraryItem> findById(String id) {
+        return Optional.ofNullable(items.get(id));
+    }
+
+    // タイトル（完全一致）でアイテムを探す
+    public List<LibraryItem> findByTitle(String title) {
+        return lookup(itemsByTitle, title);
+    }
+
+    // カテゴリでアイテムを探す
+    public List<LibraryItem> findByCategory(String category) {
+        return lookup(itemsByCategory, category);
+    }
+
+    // 出版社でアイテムを探す
+    public List<LibraryItem> findByPublisher(String publisher) {
+        return lookup(itemsByPublisher, publisher);
+    }
+
+    // 著者で書籍を探す
+    public List<LibraryItem> findByAuthor(String author) {
+        return lookup(itemsByAuthor, author);
+    }
+
+    // タイトル・著者の一部で検索する（例: 「入門」「java」）。関連度の高い順に最大20件
+    public List<LibraryItem> search(String query) {
+        return search(query, 20);
+    }
+
+    // タイトル・著者の一部で検索する。関連度の高い順に最大limit件
+    public List<LibraryItem> search(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
     // 会員を登録
     public void registerMember(Member member) {
         members.add(member);
@@ -31,8 +142,8 @@ public class Library {
 
     // 会員がアイテムを借りる処理
     public void borrowItem(Member member, LibraryItem item) {
-        // 図書館にアイテムがあるか確認
-        if (!items.contains(item)) {
+        // 図書館にアイテムがあるか確認（IDのハッシュ表を引くだけなので蔵書数によらず一定時間）
+        if (items.get(item.getId()) != item) {
             System.out.println("指定されたアイテムは図書館にありません");
             return;
         }
@@ -56,7 +167,7 @@ public class Library {
         System.out.println("蔵書数: " + items.size());
         System.out.println("会員数: " + members.size());
 
-        long borrowedCount = items.stream()
+        long borrowedCount = items.values().stream()
                 .filter(item -> !item.isAvailable())
                 .count();
         System.out.println("貸出中: " + borrowedCount + "点");
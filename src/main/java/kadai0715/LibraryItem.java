@@ -41,6 +41,8 @@ public abstract class LibraryItem {
     // ゲッター（外部から情報を取得できるように）
     public String getId() { return id; }
     public String getTitle() { return title; }
+    public String getPublisher() { return publisher; }
+    public String getCategory() { return category; }
     public boolean isAvailable() { return isAvailable; }
 
     // アイテムの情報を見やすく文字列で返す
@@ -23,6 +23,17 @@ public class LibraryManagementSystem {
         library.registerMember(member1);
         library.registerMember(member2);
 
+        // 検索（IDや著者・カテゴリの索引を引く）
+        System.out.println("--- 検索 ---");
+        library.findById("978-4-123456-78-9").ifPresent(item -> System.out.println("ID検索: " + item));
+        System.out.println("著者「鈴木花子」: " + library.findByAuthor("鈴木花子"));
+        System.out.println("カテゴリ「プログラミング」: " + library.findByCategory("プログラミング"));
+        System.out.println("出版社「Tech出版」: " + library.findByPublisher("Tech出版"));
+        // 全文検索（タイトル・著者の一部で探せる）
+        System.out.println("「入門」で検索: " + library.search("入門"));
+        System.out.println("「ｊａｖａ」で検索: " + library.search("ｊａｖａ"));
+        System.out.println("「花子」で検索: " + library.search("花子") + "\n");
+
         // 貸出処理
         System.out.println("--- 貸出処理 ---");
         library.borrowItem(member1, book1);
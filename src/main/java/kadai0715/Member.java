@@ -1,15 +1,25 @@
 package kadai0715;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 // 会員の共通部分をまとめた抽象クラス。貸出可能インターフェースを実装。
 public abstract class Member implements Borrowable {
     protected String memberId;                  // 会員ID
     protected String name;                      // 会員名
     protected String email;                     // メールアドレス
-    protected List<BorrowRecord> borrowRecords; // 貸出履歴
+    protected List<BorrowRecord> borrowRecords; // 貸出履歴（追加するだけ。返却済みの記録はファイルに退避できる）
+    protected Map<LibraryItem, BorrowRecord> activeLoans; // 返却していない貸出（アイテム → 貸出記録、借りた順）
     protected LocalDate registrationDate;       // 登録日
 
     public Member(String memberId, String name, String email) {
@@ -17,6 +27,7 @@ public abstract class Member implements Borrowable {
         this.name = name;
         this.email = email;
         this.borrowRecords = new ArrayList<>();
+        this.activeLoans = new LinkedHashMap<>();
         this.registrationDate = LocalDate.now();
     }
 
@@ -28,11 +39,9 @@ public abstract class Member implements Borrowable {
 
     @Override
     public boolean canBorrow(LibraryItem item) {
-        // 現在借りている数をカウントし、上限と比較
-        long count = borrowRecords.stream()
-                .filter(r -> r.getReturnDate() == null)  // 返却していないもの
-                .count();
-        return count < getMaxBorrowCount();
+        // 現在借りている数（返却していない貸出の数）を上限と比較
+        // 履歴をたどらないので、過去の貸出が何件あっても一定時間で判定できる
+        return activeLoans.size() < getMaxBorrowCount();
     }
 
     @Override
@@ -43,41 +52,66 @@ public abstract class Member implements Borrowable {
         }
         // 新しい貸出記録を作成し、アイテムの貸出処理を呼ぶ
         BorrowRecord record = new BorrowRecord(item, this);
-        borrowRecords.add(record);
         item.borrowItem();
+        borrowRecords.add(record);
+        activeLoans.put(item, record);
         System.out.println(name + "が「" + item.getTitle() + "」を借りました");
     }
 
     @Override
     public void returnItem(LibraryItem item) {
-        // 貸出履歴から該当の貸出記録を探す
-        for (BorrowRecord record : borrowRecords) {
-            if (record.getItem().equals(item) && record.getReturnDate() == null) {
-                record.returnItem();      // 返却日を記録
-                item.returnItem();        // アイテムの返却処理
-                System.out.println(name + "が「" + item.getTitle() + "」を返却しました");
-                return;
-            }
+        // 返却していない貸出から該当の貸出記録を取り出す
+        BorrowRecord record = activeLoans.remove(item);
+        if (record == null) {
+            System.out.println("該当する貸出記録が見つかりません");
+            return;
         }
-        System.out.println("該当する貸出記録が見つかりません");
+        record.returnItem();      // 返却日を記録
+        item.returnItem();        // アイテムの返却処理
+        System.out.println(name + "が「" + item.getTitle() + "」を返却しました");
     }
 
     @Override
     public void showBorrowedItems() {
         System.out.println("\n" + name + "の貸出状況:");
-        boolean hasItems = false;
-        for (BorrowRecord record : borrowRecords) {
-            if (record.getReturnDate() == null) {
-                System.out.println("- " + record.getItem().getTitle() +
-                        " (返却期限: " + record.getDueDate() + ")");
-                hasItems = true;
-            }
+        for (BorrowRecord record : activeLoans.values()) {
+            System.out.println("- " + record.getItem().getTitle() +
+                    " (返却期限: " + record.getDueDate() + ")");
         }
-        if (!hasItems) {
+        if (activeLoans.isEmpty()) {
             System.out.println("現在借りている本はありません");
         }
     }
 
+    // 返却済みの貸出記録をファイルの末尾に書き出し、メモリ上の履歴から外す
+    // 形式: 会員ID,アイテムID,貸出日,返却期限,返却日（1行1件）
+    // 戻り値は書き出した件数
+    public int archiveReturnedRecords(Path file) throws IOException {
+        List<BorrowRecord> remaining = new ArrayList<>();
+        int archived = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (BorrowRecord record : borrowRecords) {
+                if (record.getReturnDate() == null) {
+                    remaining.add(record);
+                    continue;
+                }
+                writer.write(memberId + "," + record.getItem().getId() + "," + record.getBorrowDate() + ","
+                        + record.getDueDate() + "," + record.getReturnDate());
+                writer.newLine();
+                archived++;
+            }
+        }
+        borrowRecords = remaining;
+        return archived;
+    }
+
+    // 現在借りている数
+    public int getActiveLoanCount() { return activeLoans.size(); }
+
+    // 貸出履歴（退避していないもの。変更はできない）
+    public List<BorrowRecord> getBorrowRecords() { return Collections.unmodifiableList(borrowRecords); }
+
     public String getMemberId() { return memberId; }
     public String getName() { return name; }
 }
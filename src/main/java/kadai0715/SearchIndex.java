@@ -0,0 +1,403 @@
+package kadai0715;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// タイトルと著者の全文検索用の転置索引
+// 文字列を2文字ずつ区切った語（バイグラム）に分けて索引を作るので、「Java入門」の「入門」のような
+// 空白で区切られていない日本語の一部分でも検索できる。
+// 1文字だけの検索語（「本」など）にも答えられるよう、索引には1文字ずつの語（ユニグラム）も入れておく。
+// 検索時は2文字以上の部分をバイグラムで、1文字だけの部分をユニグラムで引く。
+// 語ごとに、その語を含むアイテムの番号を昇順に並べた一覧（ポスティングリスト）を持つ。
+// 番号は前の番号との差を可変長のバイト列で詰めて保存し、64件ごとに読み飛ばし用の位置を記録しておく。
+// 複数の語を含む検索では、件数の少ない一覧から順に、読み飛ばしを使いながら共通のアイテムを探す。
+// 結果は簡単なTF-IDF（語の出現回数 × その語の珍しさ）の合計が大きい順に並べる。
+public class SearchIndex {
+    private static final int SKIP_INTERVAL = 64; // 読み飛ばし位置を記録する間隔（件数）
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private LibraryItem[] documents = new LibraryItem[16]; // 番号 → アイテム
+    private int documentCount;
+    private final Map<LibraryItem, Integer> numbers = new HashMap<>(); // アイテム → 番号（削除用）
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+
+    // アイテムを索引に追加する（番号は追加順に振るので、一覧の末尾に足すだけで昇順が保たれる）
+    public void add(LibraryItem item) {
+        if (numbers.containsKey(item)) {
+            return;
+        }
+        int number = documentCount++;
+        if (number == documents.length) {
+            documents = Arrays.copyOf(documents, number * 2);
+        }
+        documents[number] = item;
+        numbers.put(item, number);
+
+        // 語ごとの出現回数を数えてから、一覧に1回ずつ追加する
+        for (Map.Entry<String, Integer> entry : gramCounts(item).entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new PostingList()).add(number, entry.getValue());
+        }
+    }
+
+    // アイテムを検索結果に出ないようにする（一覧からは消さず、削除済みの印をつける）
+    // 語の珍しさは削除済みを除いた件数で求めるので、アイテムが含む語の一覧の有効件数を減らしておく
+    public void remove(LibraryItem item) {
+        Integer number = numbers.remove(item);
+        if (number != null) {
+            deleted.set(number);
+            documents[number] = null;
+            deletedCount++;
+            for (String gram : gramCounts(item).keySet()) {
+                postings.get(gram).liveCount--;
+            }
+        }
+    }
+
+    // アイテムのタイトル（本なら著者も）に含まれる語ごとの出現回数
+    private static Map<String, Integer> gramCounts(LibraryItem item) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String gram : indexTokens(item.getTitle())) {
+            counts.merge(gram, 1, Integer::sum);
+        }
+        if (item instanceof Book) {
+            for (String gram : indexTokens(((Book) item).getAuthor())) {
+                counts.merge(gram, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    // 検索語のすべての語を含むアイテムを、スコアの高い順に最大limit件返す
+    public List<LibraryItem> search(String query, int limit) {
+        List<String> grams = new ArrayList<>(new LinkedHashSet<>(tokenize(query))); // 同じ語は1回だけ使う
+        if (grams.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        PostingList[] lists = new PostingList[grams.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(grams.get(i));
+            if (lists[i] == null || lists[i].liveCount == 0) {
+                return new ArrayList<>(); // 含むアイテム（削除済みを除く）が1件もない語がある
+            }
+        }
+        // 有効件数の少ない一覧を先頭にする（候補が最も少なくなる）
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.liveCount, b.liveCount));
+
+        int liveDocuments = documentCount - deletedCount;
+        double[] idf = new double[lists.length];
+        Cursor[] cursors = new Cursor[lists.length];
+        double otherMaxScore = 0; // 先頭以外の語のスコアの上限の合計
+        for (int i = 0; i < lists.length; i++) {
+            idf[i] = Math.log(1.0 + (double) liveDocuments / lists[i].liveCount);
+            cursors[i] = new Cursor(lists[i]);
+            if (i > 0) {
+                otherMaxScore += lists[i].maxTf * idf[i];
+            }
+        }
+
+        TopResults top = new TopResults(limit);
+        Cursor lead = cursors[0];
+        lead.next();
+        candidates:
+        while (lead.doc != Integer.MAX_VALUE) {
+            // 上位limit件が決まった後は、どのアイテムも残りの最低スコアを超えられない区切りを丸ごと読み飛ばす
+            // （同点なら番号の小さい方を優先するので、後のアイテムは同点でも入れ替わらない）
+            if (top.isFull() && lead.blockMaxTf() * idf[0] + otherMaxScore <= top.lowestScore()) {
+                lead.skipBlock();
+                continue;
+            }
+            int doc = lead.doc;
+            double score = lead.tf * idf[0];
+            for (int i = 1; i < cursors.length; i++) {
+                cursors[i].advance(doc);
+                if (cursors[i].doc != doc) {
+                    if (cursors[i].doc == Integer.MAX_VALUE) {
+                        break candidates; // どれかの一覧が尽きたら、それ以上の共通アイテムはない
+                    }
+                    lead.advance(cursors[i].doc); // 先に進んだ一覧の位置まで候補を飛ばす
+                    continue candidates;
+                }
+                score += cursors[i].tf * idf[i];
+            }
+            if (!deleted.get(doc)) {
+                top.offer(doc, score);
+            }
+            lead.next();
+        }
+
+        List<LibraryItem> result = new ArrayList<>();
+        for (int doc : top.sortedDocuments()) {
+            result.add(documents[doc]);
+        }
+        return result;
+    }
+
+    // 索引にあるアイテムの数（削除済みを除く）
+    public int size() {
+        return documentCount - deletedCount;
+    }
+
+    // 文字列を検索用の語に分ける
+    // 全角英数字と半角を同じに扱い（NFKC正規化）、大文字小文字は区別しない。
+    // 空白で区切られた部分ごとに隣り合う2文字を1語とし、1文字だけの部分はその1文字を1語とする。
+    static List<String> tokenize(String text) {
+        return tokenize(text, false);
+    }
+
+    // 索引に入れる語に分ける（tokenizeの語に加えて、2文字以上の部分の1文字ずつも1語とする）
+    static List<String> indexTokens(String text) {
+        return tokenize(text, true);
+    }
+
+    private static List<String> tokenize(String text, boolean unigrams) {
+        List<String> grams = new ArrayList<>();
+        if (text == null) {
+            return grams;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        for (String segment : normalized.split("\\s+")) {
+            int[] codePoints = segment.codePoints().toArray();
+            if (codePoints.length == 1) {
+                grams.add(segment);
+                continue;
+            }
+            for (int i = 0; i + 1 < codePoints.length; i++) {
+                grams.add(new String(codePoints, i, 2));
+            }
+            if (unigrams) {
+                for (int i = 0; i < codePoints.length; i++) {
+                    grams.add(new String(codePoints, i, 1));
+                }
+            }
+        }
+        return grams;
+    }
+
+    // 1つの語のポスティングリスト（番号の差と出現回数を可変長で詰めたバイト列）
+    private static class PostingList {
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private int liveCount;      // 削除済みを除いた件数（語の珍しさと並べ替えに使う）
+        private int lastDoc = -1;
+        private int maxTf;          // 出現回数の最大値（スコアの上限を求めるため）
+        // SKIP_INTERVAL件ごとの区切りの、直前の番号・バイト位置・区切り内の出現回数の最大値
+        private int[] skipDocs = new int[1];
+        private int[] skipOffsets = new int[1];
+        private int[] blockMaxTf = new int[1];
+        private int skipCount;
+
+        void add(int doc, int tf) {
+            if (count % SKIP_INTERVAL == 0) {
+                if (skipCount == skipDocs.length) {
+                    skipDocs = Arrays.copyOf(skipDocs, skipCount * 2);
+                    skipOffsets = Arrays.copyOf(skipOffsets, skipCount * 2);
+                    blockMaxTf = Arrays.copyOf(blockMaxTf, skipCount * 2);
+                }
+                skipDocs[skipCount] = lastDoc;
+                skipOffsets[skipCount] = length;
+                skipCount++;
+            }
+            writeVarInt(doc - lastDoc);
+            writeVarInt(tf);
+            maxTf = Math.max(maxTf, tf);
+            blockMaxTf[skipCount - 1] = Math.max(blockMaxTf[skipCount - 1], tf);
+            lastDoc = doc;
+            count++;
+            liveCount++;
+        }
+
+        private void writeVarInt(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+
+    // ポスティングリストを先頭から読む位置
+    private static class Cursor {
+        private final PostingList list;
+        private int offset;
+        private int index;     // 読んだ件数
+        int doc = -1;          // 今の番号（読み終えたらInteger.MAX_VALUE）
+        int tf;
+
+        Cursor(PostingList list) {
+            this.list = list;
+        }
+
+        void next() {
+            if (index == list.count) {
+                doc = Integer.MAX_VALUE;
+                return;
+            }
+            doc += readVarInt();
+            tf = readVarInt();
+            index++;
+        }
+
+        // 今の番号がある区切りの、出現回数の最大値
+        int blockMaxTf() {
+            return list.blockMaxTf[(index - 1) / SKIP_INTERVAL];
+        }
+
+        // 今の区切りの残りを読み飛ばし、次の区切りの先頭へ進める
+        void skipBlock() {
+            int nextBlock = (index - 1) / SKIP_INTERVAL + 1;
+            if (nextBlock >= list.skipCount) {
+                doc = Integer.MAX_VALUE;
+                return;
+            }
+            offset = list.skipOffsets[nextBlock];
+            doc = list.skipDocs[nextBlock];
+            index = nextBlock * SKIP_INTERVAL;
+            next();
+        }
+
+        // 番号がtarget以上になるまで進める（区切りごと読み飛ばせる場合は読み飛ばす）
+        void advance(int target) {
+            if (doc >= target) {
+                return;
+            }
+            // 次の区切りまでにtarget以上の番号があれば、そのまま順に読む
+            int nextBlock = index / SKIP_INTERVAL + 1;
+            if (nextBlock < list.skipCount && list.skipDocs[nextBlock] < target) {
+                // 直前の番号がtargetより小さい最後の区切り（それより前の区切りには求める番号はない）を二分探索で探す
+                int found = Arrays.binarySearch(list.skipDocs, nextBlock, list.skipCount, target);
+                int skipTo = (found >= 0 ? found : -found - 1) - 1;
+                offset = list.skipOffsets[skipTo];
+                doc = list.skipDocs[skipTo];
+                index = skipTo * SKIP_INTERVAL;
+            }
+            while (doc < target) {
+                next();
+            }
+        }
+
+        private int readVarInt() {
+            byte[] data = list.data;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    // スコアの高い順に上位limit件を残す（最小ヒープ）
+    private static class TopResults {
+        private final int limit;
+        private int[] docs;
+        private double[] scores;
+        private int size;
+
+        TopResults(int limit) {
+            this.limit = limit;
+            this.docs = new int[Math.min(limit, 16)];
+            this.scores = new double[docs.length];
+        }
+
+        void offer(int doc, double score) {
+            if (size < limit) {
+                if (size == docs.length) {
+                    int capacity = (int) Math.min(limit, size * 2L);
+                    docs = Arrays.copyOf(docs, capacity);
+                    scores = Arrays.copyOf(scores, capacity);
+                }
+                docs[size] = doc;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (worse(0, score, doc)) {
+                docs[0] = doc;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        boolean isFull() {
+            return size == limit;
+        }
+
+        // 残っている中で最も低いスコア
+        double lowestScore() {
+            return scores[0];
+        }
+
+        // 先頭（最も低いもの）が、新しい候補より低いか（同点なら番号の大きい方を低いとする）
+        private boolean worse(int i, double score, int doc) {
+            return scores[i] < score || (scores[i] == score && docs[i] > doc);
+        }
+
+        private boolean lower(int i, int j) {
+            return scores[i] < scores[j] || (scores[i] == scores[j] && docs[i] > docs[j]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!lower(i, parent)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int smallest = i;
+                if (left < size && lower(left, smallest)) {
+                    smallest = left;
+                }
+                if (left + 1 < size && lower(left + 1, smallest)) {
+                    smallest = left + 1;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int doc = docs[i];
+            docs[i] = docs[j];
+            docs[j] = doc;
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+
+        // スコアの高い順（同点なら追加の古い順）の番号
+        int[] sortedDocuments() {
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = docs[0];
+                docs[0] = docs[--size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package kadai0717;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * イベント時刻ウィンドウ集計
+ * ログのタイムスタンプ（壁時計ではなくイベント時刻）でタンブリング／スライディングウィンドウに振り分け、
+ * ウォーターマーク（観測した最大時刻 - 許容遅延）を過ぎたウィンドウから順に確定してリスナーへ渡す。
+ */
+class EventTimeWindower {
+
+    /**
+     * 確定したウィンドウを受け取るリスナー
+     */
+    interface WindowListener {
+        void onWindowClosed(Window window);
+    }
+
+    /**
+     * 1つのウィンドウの集計結果
+     */
+    static class Window {
+        private final long startMillis;
+        private final long endMillis;   // 排他的
+        private long count;
+        private long debugCount;
+        private long infoCount;
+        private long warnCount;
+        private long errorCount;
+        private long responseTimeSum;
+        private long responseTimeCount;
+        private int maxResponseTime;
+
+        Window(long startMillis, long endMillis) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        void add(LogEntry entry) {
+            count++;
+            switch (entry.getLevel()) {
+                case "DEBUG" -> debugCount++;
+                case "INFO" -> infoCount++;
+                case "WARN" -> warnCount++;
+                case "ERROR" -> errorCount++;
+                default -> { }
+            }
+            Integer responseTime = entry.getResponseTime();
+            if (responseTime != null) {
+                responseTimeSum += responseTime;
+                responseTimeCount++;
+                maxResponseTime = Math.max(maxResponseTime, responseTime);
+            }
+        }
+
+        public LocalDateTime getStart() { return toDateTime(startMillis); }
+        public LocalDateTime getEnd() { return toDateTime(endMillis); }
+        public long getCount() { return count; }
+        public long getDebugCount() { return debugCount; }
+        public long getInfoCount() { return infoCount; }
+        public long getWarnCount() { return warnCount; }
+        public long getErrorCount() { return errorCount; }
+        public int getMaxResponseTime() { return maxResponseTime; }
+
+        public double getAverageResponseTime() {
+            return responseTimeCount == 0 ? 0.0 : (double) responseTimeSum / responseTimeCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s ～ %s) 件数=%d ERROR=%d WARN=%d 平均応答=%.1fms",
+                    getStart(), getEnd(), count, errorCount, warnCount, getAverageResponseTime());
+        }
+    }
+
+    private final long sizeMillis;
+    private final long slideMillis;
+    private final long latenessMillis;
+    private final List<WindowListener> listeners = new ArrayList<>();
+    // 開始時刻順に並んだ未確定ウィンドウ。件数は (size + lateness) / slide 程度に収まる
+    private final TreeMap<Long, Window> openWindows = new TreeMap<>();
+
+    private long maxEventMillis = Long.MIN_VALUE;
+    private long watermarkMillis = Long.MIN_VALUE;
+    private long lateEvents;
+
+    /**
+     * タンブリングウィンドウ（重なりなし）
+     */
+    public static EventTimeWindower tumbling(Duration size, Duration allowedLateness) {
+        return new EventTimeWindower(size, size, allowedLateness);
+    }
+
+    /**
+     * スライディングウィンドウ（sizeの幅をslideずつずらす）
+     */
+    public static EventTimeWindower sliding(Duration size, Duration slide, Duration allowedLateness) {
+        return new EventTimeWindower(size, slide, allowedLateness);
+    }
+
+    private EventTimeWindower(Duration size, Duration slide, Duration allowedLateness) {
+        if (size.isZero() || size.isNegative() || slide.isZero() || slide.isNegative()) {
+            throw new IllegalArgumentException("ウィンドウ幅とスライド幅は正の値である必要があります");
+        }
+        if (slide.compareTo(size) > 0) {
+            throw new IllegalArgumentException("スライド幅はウィンドウ幅以下である必要があります");
+        }
+        this.sizeMillis = size.toMillis();
+        this.slideMillis = slide.toMillis();
+        this.latenessMillis = allowedLateness.toMillis();
+    }
+
+    public void addListener(WindowListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * ログエントリをイベント時刻で該当する全ウィンドウに加える
+     */
+    public void accept(LogEntry entry) {
+        long eventMillis = toMillis(entry.getTimestamp());
+
+        // 最後に属するウィンドウの終端がウォーターマーク以下なら、すでに確定済みなので遅延扱い
+        long lastStart = Math.floorDiv(eventMillis, slideMillis) * slideMillis;
+        if (lastStart + sizeMillis <= watermarkMillis) {
+            lateEvents++;
+            return;
+        }
+
+        for (long start = lastStart; start > eventMillis - sizeMillis; start -= slideMillis) {
+            if (start + sizeMillis <= watermarkMillis) {
+                break; // 確定済みのウィンドウには加えない（二重計上を防ぐ）
+            }
+            final long windowStart = start;
+            openWindows.computeIfAbsent(windowStart, s -> new Window(s, s + sizeMillis)).add(entry);
+        }
+
+        if (eventMillis > maxEventMillis) {
+            maxEventMillis = eventMillis;
+            advanceWatermark(maxEventMillis - latenessMillis);
+        }
+    }
+
+    /**
+     * ウォーターマークを進め、終端がウォーターマーク以下のウィンドウを確定する
+     */
+    private void advanceWatermark(long newWatermark) {
+        if (newWatermark <= watermarkMillis) {
+            return;
+        }
+        watermarkMillis = newWatermark;
+        Iterator<Map.Entry<Long, Window>> it = openWindows.entrySet().iterator();
+        while (it.hasNext()) {
+            Window window = it.next().getValue();
+            if (window.endMillis > watermarkMillis) {
+                break; // 開始順に並んでいるので以降も未確定
+            }
+            it.remove();
+            listeners.forEach(l -> l.onWindowClosed(window));
+        }
+    }
+
+    /**
+     * 入力終了時に残っているウィンドウをすべて確定する
+     */
+    public void flush() {
+        while (!openWindows.isEmpty()) {
+            Window window = openWindows.pollFirstEntry().getValue();
+            watermarkMillis = Math.max(watermarkMillis, window.endMillis);
+            listeners.forEach(l -> l.onWindowClosed(window));
+        }
+    }
+
+    public long getLateEvents() { return lateEvents; }
+    public int getOpenWindowCount() { return openWindows.size(); }
+
+    public LocalDateTime getWatermark() {
+        return watermarkMillis == Long.MIN_VALUE ? null : toDateTime(watermarkMillis);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,254 @@
+package kadai0717;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+
+/**
+ * フィールド抽出器をまとめて「コンパイル」した1パスのkey=valueスキャナと、抽出結果の列データ
+ * 行を1回走査するだけで全抽出器を処理するため、抽出器を増やしても正規表現を増やすより大幅に安い。
+ * 値は行番号（LogAnalyzerのentriesの添字）ごとにプリミティブ配列へ格納する。
+ */
+class ExtractedFields {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<FieldExtractor> extractors;
+    private final Map<String, Integer> columnByKey = new HashMap<>();
+    // キーの先頭文字（ASCII）ごとの候補列番号。照合時に文字列を切り出さずに比較する
+    private final int[][] candidatesByFirstChar = new int[128][];
+
+    private long[][] values;          // 列ごとの値（TEXTは辞書ID）
+    private final BitSet[] present;   // 列ごとの値の有無
+    private final List<Map<String, Integer>> dictionaries;   // 列ごとの値→辞書ID（TEXT以外はnull）
+    private final List<List<String>> dictionaryValues;       // 列ごとの辞書ID→値（TEXT以外はnull）
+    private int rowCount;
+
+    public ExtractedFields(List<FieldExtractor> extractors) {
+        this.extractors = List.copyOf(extractors);
+        int columns = this.extractors.size();
+        this.values = new long[columns][INITIAL_CAPACITY];
+        this.present = new BitSet[columns];
+        this.dictionaries = new ArrayList<>(columns);
+        this.dictionaryValues = new ArrayList<>(columns);
+
+        for (int c = 0; c < columns; c++) {
+            FieldExtractor extractor = this.extractors.get(c);
+            String key = extractor.getKey();
+            if (columnByKey.putIfAbsent(key, c) != null) {
+                throw new IllegalArgumentException("キーが重複しています: " + key);
+            }
+            present[c] = new BitSet();
+            boolean text = extractor.getType() == FieldExtractor.Type.TEXT;
+            dictionaries.add(text ? new HashMap<>() : null);
+            dictionaryValues.add(text ? new ArrayList<>() : null);
+            int first = key.charAt(0) & 0x7F;
+            int[] bucket = candidatesByFirstChar[first];
+            bucket = bucket == null ? new int[1] : Arrays.copyOf(bucket, bucket.length + 1);
+            bucket[bucket.length - 1] = c;
+            candidatesByFirstChar[first] = bucket;
+        }
+    }
+
+    /**
+     * 1行を走査し、登録されたキーの値を指定行に格納する
+     */
+    public void extract(String line, int row) {
+        ensureCapacity(row + 1);
+        rowCount = Math.max(rowCount, row + 1);
+
+        int length = line.length();
+        int keyStart = -1;
+        for (int i = 0; i < length; i++) {
+            char ch = line.charAt(i);
+            if (isKeyChar(ch)) {
+                if (keyStart < 0) {
+                    keyStart = i;
+                }
+                continue;
+            }
+            if (ch == '=' && keyStart >= 0) {
+                int column = findColumn(line, keyStart, i);
+                int valueEnd = valueEnd(line, i + 1);
+                if (column >= 0) {
+                    store(column, row, line, i + 1, valueEnd);
+                }
+                i = valueEnd - 1; // 値の中の'='はキーとして扱わない
+            }
+            keyStart = -1;
+        }
+    }
+
+    private int findColumn(String line, int keyStart, int keyEnd) {
+        int[] candidates = candidatesByFirstChar[line.charAt(keyStart) & 0x7F];
+        if (candidates == null) {
+            return -1;
+        }
+        int keyLength = keyEnd - keyStart;
+        for (int column : candidates) {
+            String key = extractors.get(column).getKey();
+            if (key.length() == keyLength && line.regionMatches(keyStart, key, 0, keyLength)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private void store(int column, int row, String line, int start, int end) {
+        if (extractors.get(column).getType() == FieldExtractor.Type.INT) {
+            // 先頭の数値部分だけを読む（単位などの接尾辞は無視）
+            int i = start;
+            boolean negative = i < end && line.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            int digitsStart = i;
+            long value = 0;
+            while (i < end && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+                value = value * 10 + (line.charAt(i) - '0');
+                i++;
+            }
+            if (i == digitsStart) {
+                return; // 数値でなければ欠損扱い
+            }
+            values[column][row] = negative ? -value : value;
+        } else {
+            String text = line.substring(start, end);
+            Integer id = dictionaries.get(column).get(text);
+            if (id == null) {
+                id = dictionaryValues.get(column).size();
+                dictionaries.get(column).put(text, id);
+                dictionaryValues.get(column).add(text);
+            }
+            values[column][row] = id;
+        }
+        present[column].set(row);
+    }
+
+    static boolean isKeyChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+
+    private static int valueEnd(String line, int start) {
+        int i = start;
+        while (i < line.length()) {
+            char ch = line.charAt(i);
+            if (Character.isWhitespace(ch) || ch == ',' || ch == ';' || ch == ')') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (values.length == 0 || rows <= values[0].length) {
+            return;
+        }
+        int newCapacity = Math.max(rows, values[0].length * 2);
+        for (int c = 0; c < values.length; c++) {
+            values[c] = Arrays.copyOf(values[c], newCapacity);
+        }
+    }
+
+    // ===== 列データへのアクセス =====
+
+    public List<FieldExtractor> getExtractors() { return extractors; }
+    public int getRowCount() { return rowCount; }
+
+    public boolean hasField(String key) {
+        return columnByKey.containsKey(key);
+    }
+
+    public boolean isPresent(String key, int row) {
+        return present[column(key)].get(row);
+    }
+
+    public long getLong(String key, int row) {
+        return values[column(key)][row];
+    }
+
+    public String getText(String key, int row) {
+        int c = column(key);
+        return present[c].get(row) ? dictionaryValues.get(c).get((int) values[c][row]) : null;
+    }
+
+    /**
+     * 数値フィールドの統計（値のある行のみ）
+     */
+    public LongSummaryStatistics statistics(String key) {
+        int c = column(key);
+        LongSummaryStatistics stats = new LongSummaryStatistics();
+        long[] column = values[c];
+        BitSet bits = present[c];
+        for (int row = bits.nextSetBit(0); row >= 0; row = bits.nextSetBit(row + 1)) {
+            stats.accept(column[row]);
+        }
+        return stats;
+    }
+
+    /**
+     * TEXTフィールドの値ごとに、数値フィールドを集計する（辞書IDの配列上で集計）
+     */
+    public Map<String, LongSummaryStatistics> groupBy(String textKey, String valueKey) {
+        int k = column(textKey);
+        int v = column(valueKey);
+        List<String> names = dictionaryValues.get(k);
+        if (names == null) {
+            throw new IllegalArgumentException("グループ化キーはTEXTフィールドである必要があります: " + textKey);
+        }
+        LongSummaryStatistics[] groups = new LongSummaryStatistics[names.size()];
+        long[] keys = values[k];
+        long[] vals = values[v];
+        BitSet bits = (BitSet) present[k].clone();
+        bits.and(present[v]);
+        for (int row = bits.nextSetBit(0); row >= 0; row = bits.nextSetBit(row + 1)) {
+            int id = (int) keys[row];
+            if (groups[id] == null) {
+                groups[id] = new LongSummaryStatistics();
+            }
+            groups[id].accept(vals[row]);
+        }
+        Map<String, LongSummaryStatistics> result = new LinkedHashMap<>();
+        for (int id = 0; id < groups.length; id++) {
+            if (groups[id] != null) {
+                result.put(names.get(id), groups[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * TEXTフィールドの値ごとの出現件数
+     */
+    public Map<String, Long> countBy(String textKey) {
+        int k = column(textKey);
+        List<String> names = dictionaryValues.get(k);
+        if (names == null) {
+            throw new IllegalArgumentException("TEXTフィールドではありません: " + textKey);
+        }
+        long[] counts = new long[names.size()];
+        long[] keys = values[k];
+        BitSet bits = present[k];
+        for (int row = bits.nextSetBit(0); row >= 0; row = bits.nextSetBit(row + 1)) {
+            counts[(int) keys[row]]++;
+        }
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            result.put(names.get(id), counts[id]);
+        }
+        return result;
+    }
+
+    private int column(String key) {
+        Integer c = columnByKey.get(key);
+        if (c == null) {
+            throw new IllegalArgumentException("未登録のフィールドです: " + key);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,49 @@
+package kadai0717;
+
+/**
+ * key=value形式のフィールド抽出の宣言
+ * 例: FieldExtractor.intField("bytes"), FieldExtractor.textField("user")
+ */
+class FieldExtractor {
+
+    /**
+     * 抽出した値の型
+     */
+    enum Type {
+        INT,   // 先頭の数値部分をlongとして保持（"123ms" → 123）
+        TEXT   // 文字列を辞書符号化してint IDとして保持
+    }
+
+    private final String key;
+    private final Type type;
+
+    private FieldExtractor(String key, Type type) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("キーを指定してください");
+        }
+        // 抽出器（ExtractedFields）がキーとして認識するのは英数字と_だけなので、それ以外を含むキーは登録できない
+        for (int i = 0; i < key.length(); i++) {
+            if (!ExtractedFields.isKeyChar(key.charAt(i))) {
+                throw new IllegalArgumentException("キーに使えるのは半角英数字と_のみです: " + key);
+            }
+        }
+        this.key = key;
+        this.type = type;
+    }
+
+    public static FieldExtractor intField(String key) {
+        return new FieldExtractor(key, Type.INT);
+    }
+
+    public static FieldExtractor textField(String key) {
+        return new FieldExtractor(key, Type.TEXT);
+    }
+
+    public String getKey() { return key; }
+    public Type getType() { return type; }
+
+    @Override
+    public String toString() {
+        return key + "(" + type + ")";
+    }
+}
@@ -30,7 +30,12 @@ public class LogAnalysisSystem {
 
             try { // ログ解析中のエラーを詳細に出力するためのtry-catchブロック
                 // ログ解析システムの初期化
-                LogAnalyzer analyzer = new LogAnalyzer(APPLICATION_LOG_PATH); // 絶対パスを渡す
+                // key=value形式のフィールド抽出器（解析と同じ1パスで処理される）
+                List<FieldExtractor> extractors = List.of(
+                        FieldExtractor.textField("user"),
+                        FieldExtractor.intField("status"),
+                        FieldExtractor.intField("bytes"));
+                LogAnalyzer analyzer = new LogAnalyzer(APPLICATION_LOG_PATH, extractors); // 絶対パスを渡す
 
                 // 基本統計の表示
                 analyzer.displayBasicStatistics();
@@ -44,6 +49,12 @@ public class LogAnalysisSystem {
                 // 時系列分析
                 analyzer.analyzeTimeSeries();
 
+                // スタックトレース分析
+                analyzer.analyzeStackTraces();
+
+                // 抽出フィールド分析
+                analyzer.analyzeFields();
+
                 // レポート生成
                 analyzer.generateReport(ANALYSIS_REPORT_PATH); // 絶対パスを渡す
             } catch (Exception parseException) {
@@ -108,6 +119,12 @@ public class LogAnalysisSystem {
                 String module = modules[random.nextInt(modules.length)];
                 String message = messages[random.nextInt(messages.length)];
                 int responseTime = random.nextInt(1000) + 50;
+                // API処理の行にはkey=value形式のフィールドを付ける（フィールド分析の対象）
+                // エラー行はメッセージごとに集計するので付けない
+                if (message.equals("API request processed") && !level.equals("ERROR")) {
+                    message += String.format(" user=user%d status=%d bytes=%d",
+                            random.nextInt(20), random.nextInt(10) == 0 ? 500 : 200, random.nextInt(64 * 1024));
+                }
 
                 writer.printf("%s [%s] [%s] %s (response_time=%dms)%n",
                         timestamp.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
@@ -141,7 +158,10 @@ public class LogAnalysisSystem {
 
         try {
             Thread monitor = new Thread(() -> {
-                try (LogMonitor logMonitor = new LogMonitor(monitorFile)) {
+                // 2秒のタンブリングウィンドウ、1秒までの到着遅れを許容
+                EventTimeWindower windower = EventTimeWindower.tumbling(Duration.ofSeconds(2), Duration.ofSeconds(1));
+                windower.addListener(window -> System.out.println("[ウィンドウ確定] " + window));
+                try (LogMonitor logMonitor = new LogMonitor(monitorFile, windower)) {
                     logMonitor.startMonitoring();
                 } catch (Exception e) {
                     if (!(e instanceof InterruptedException || e.getCause() instanceof InterruptedException)) {
@@ -153,15 +173,13 @@ public class LogAnalysisSystem {
             monitor.start();
 
             Thread generator = new Thread(() -> {
-                try (PrintWriter writer = new PrintWriter(
-                        Files.newBufferedWriter(monitorFile, StandardCharsets.UTF_8,
-                                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) { // APPENDは削除済み
+                // 1行ごとのflushではなく、非同期ライターがまとめて書き込む
+                try (RollingLogWriter writer = new RollingLogWriter(monitorFile)) {
 
                     for (int i = 0; i < 5; i++) {
                         String log = String.format("%s [INFO] リアルタイムログ #%d",
                                 LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), i + 1);
-                        writer.println(log);
-                        writer.flush();
+                        writer.append(log);
                         Thread.sleep(1000);
                     }
 
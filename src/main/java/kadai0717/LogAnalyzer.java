@@ -1,5 +1,6 @@
 package kadai0717;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter; // この行があることを確認
 import java.nio.charset.StandardCharsets;
@@ -13,7 +14,6 @@ import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * ログ解析器
@@ -24,10 +24,17 @@ class LogAnalyzer {
     private Map<String, Long> levelCounts;
     private Map<String, Long> moduleCounts;
     private Map<String, List<LogEntry>> errorsByModule;
+    private final ExtractedFields fields; // key=valueの抽出結果（抽出器がなければnull）
+    private final StackFrameTable stackFrames = new StackFrameTable(); // 全エントリで共有するフレーム表
 
     public LogAnalyzer(Path logFile) throws IOException {
+        this(logFile, List.of());
+    }
+
+    public LogAnalyzer(Path logFile, List<FieldExtractor> extractors) throws IOException {
         this.logFile = logFile;
         this.entries = new ArrayList<>();
+        this.fields = extractors.isEmpty() ? null : new ExtractedFields(extractors);
         parseLogFile();
     }
 
@@ -40,10 +47,19 @@ class LogAnalyzer {
                 "(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,9})?) \\[(\\w+)\\] \\[(\\w+)\\] (.+?)(?:\\s*\\(response_time=(\\d+)ms\\))?$"
         );
 
-        try (Stream<String> lines = Files.lines(logFile, StandardCharsets.UTF_8)) {
-            lines.forEach(line -> {
+        // 継続行（スタックトレース）を直前のエントリに結び付けるため、1行ずつ状態を持って読む
+        int[] frameBuffer = new int[16];
+        int frameCount = 0;
+        LogEntry current = null;
+
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
                 Matcher matcher = logPattern.matcher(line);
                 if (matcher.find()) {
+                    attachStackTrace(current, frameBuffer, frameCount);
+                    frameCount = 0;
+
                     LocalDateTime timestamp = LocalDateTime.parse(matcher.group(1));
                     String level = matcher.group(2);
                     String module = matcher.group(3);
@@ -51,9 +67,25 @@ class LogAnalyzer {
                     Integer responseTime = matcher.group(5) != null ?
                             Integer.parseInt(matcher.group(5)) : null;
 
-                    entries.add(new LogEntry(timestamp, level, module, message, responseTime));
+                    current = new LogEntry(timestamp, level, module, message, responseTime);
+                    entries.add(current);
+
+                    // 同じ走査の中でkey=valueフィールドを列に格納（抽出器の数だけ正規表現を回さない）
+                    if (fields != null) {
+                        fields.extract(message, entries.size() - 1);
+                    }
+                } else if (current != null && !line.isEmpty() && Character.isWhitespace(line.charAt(0))) {
+                    // 継続行: "at ..." のフレームだけを共有テーブルのIDとして保持
+                    String trimmed = line.trim();
+                    if (trimmed.startsWith("at ")) {
+                        if (frameCount == frameBuffer.length) {
+                            frameBuffer = Arrays.copyOf(frameBuffer, frameCount * 2);
+                        }
+                        frameBuffer[frameCount++] = stackFrames.internFrame(trimmed.substring(3));
+                    }
                 }
-            });
+            }
+            attachStackTrace(current, frameBuffer, frameCount);
         }
 
         levelCounts = entries.stream()
@@ -67,6 +99,12 @@ class LogAnalyzer {
                 .collect(Collectors.groupingBy(LogEntry::getModule));
     }
 
+    private void attachStackTrace(LogEntry entry, int[] frameBuffer, int frameCount) {
+        if (entry != null && frameCount > 0) {
+            entry.setStackTraceId(stackFrames.internTrace(frameBuffer, frameCount));
+        }
+    }
+
     /**
      * 基本統計の表示
      */
@@ -228,6 +266,73 @@ class LogAnalyzer {
         }
     }
 
+    /**
+     * スタックトレース分析（エラーを最も内側のフレームでグループ化）
+     */
+    public void analyzeStackTraces() {
+        System.out.println("\n=== スタックトレース分析 ===");
+
+        Map<Integer, Long> errorsByTopFrame = entries.stream()
+                .filter(e -> "ERROR".equals(e.getLevel()) && e.hasStackTrace())
+                .collect(Collectors.groupingBy(e -> stackFrames.getTopFrame(e.getStackTraceId()),
+                        Collectors.counting()));
+
+        if (errorsByTopFrame.isEmpty()) {
+            System.out.println("スタックトレース付きのエラーはありません。");
+            return;
+        }
+
+        System.out.printf("ユニークなフレーム数: %d, ユニークなトレース数: %d%n",
+                stackFrames.getFrameCount(), stackFrames.getTraceCount());
+        System.out.println("\n先頭フレーム別エラー:");
+        errorsByTopFrame.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
+                .limit(10)
+                .forEach(e -> System.out.printf("  %s: %d件%n", stackFrames.getFrame(e.getKey()), e.getValue()));
+    }
+
+    public StackFrameTable getStackFrames() {
+        return stackFrames;
+    }
+
+    /**
+     * 抽出フィールドの分析
+     */
+    public void analyzeFields() {
+        System.out.println("\n=== フィールド分析 ===");
+
+        if (fields == null) {
+            System.out.println("フィールド抽出器が登録されていません。");
+            return;
+        }
+
+        for (FieldExtractor extractor : fields.getExtractors()) {
+            String key = extractor.getKey();
+            if (extractor.getType() == FieldExtractor.Type.INT) {
+                LongSummaryStatistics stats = fields.statistics(key);
+                if (stats.getCount() == 0) {
+                    System.out.printf("  %s: 値なし%n", key);
+                } else {
+                    System.out.printf("  %s: %d件 合計=%d 平均=%.1f 最小=%d 最大=%d%n", key,
+                            stats.getCount(), stats.getSum(), stats.getAverage(), stats.getMin(), stats.getMax());
+                }
+            } else {
+                System.out.printf("  %s (上位5件):%n", key);
+                fields.countBy(key).entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                        .limit(5)
+                        .forEach(e -> System.out.printf("    %s: %d件%n", e.getKey(), e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 抽出フィールドの列データ（抽出器がなければnull）
+     */
+    public ExtractedFields getFields() {
+        return fields;
+    }
+
     /**
      * レポート生成
      */
@@ -12,6 +12,7 @@ class LogEntry {
     private final String module;
     private final String message;
     private final Integer responseTime; // nullable
+    private int stackTraceId = StackFrameTable.NO_TRACE; // 継続行のスタックトレース（共有テーブルのID）
 
     public LogEntry(LocalDateTime timestamp, String level, String module,
                     String message, Integer responseTime) {
@@ -28,6 +29,10 @@ class LogEntry {
     public String getModule() { return module; }
     public String getMessage() { return message; }
     public Integer getResponseTime() { return responseTime; } // nullを返す可能性あり
+    public int getStackTraceId() { return stackTraceId; }
+    public boolean hasStackTrace() { return stackTraceId != StackFrameTable.NO_TRACE; }
+
+    void setStackTraceId(int stackTraceId) { this.stackTraceId = stackTraceId; }
 
     // デバッグ用のtoStringメソッド
     @Override
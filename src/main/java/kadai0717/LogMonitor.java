@@ -1,36 +1,56 @@
 package kadai0717;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * ログモニター（リアルタイム監視）
  * 新しいログエントリをファイルから読み取り、アラートを生成
  */
 class LogMonitor implements AutoCloseable {
+    // モジュール部分は省略可能（リアルタイムログには含まれないため）
+    private static final Pattern LINE_PATTERN = Pattern.compile(
+            "^(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,9})?) \\[(\\w+)\\](?: \\[(\\w+)\\])? (.+?)(?:\\s*\\(response_time=(\\d+)ms\\))?$"
+    );
+
     private final Path logFile;
+    private final EventTimeWindower windower; // nullならウィンドウ集計を行わない
     private volatile boolean running = true;
     private FileChannel fileChannel;
-    private BufferedReader reader;
+    private InputStream input;
+    private final byte[] readBuffer = new byte[64 * 1024];
+    private byte[] partialLine = new byte[256]; // 改行がまだ書かれていない行の途中
+    private int partialLength;
+
+    private long pollIntervalMillis = 200;  // 監視間隔
+    private boolean echo = true;            // 読み取った行を表示するか
+    private boolean errorAlert = true;      // [ERROR]の行でアラートを表示するか（echoとは独立）
+    private Consumer<String> lineListener;  // 読み取った行の通知先（負荷試験などで使用）
 
     public LogMonitor(Path logFile) throws IOException {
+        this(logFile, null);
+    }
+
+    public LogMonitor(Path logFile, EventTimeWindower windower) throws IOException {
         this.logFile = logFile;
+        this.windower = windower;
         // ファイルが開かれていない場合は作成し、読み取り/追記モードで開く
         // CREATE_NEWではなくCREATEを使用することで、ファイルが存在しない場合のみ作成する
         this.fileChannel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
         // ファイルの末尾から読み込みを開始
         this.fileChannel.position(this.fileChannel.size());
-        this.reader = new BufferedReader(new InputStreamReader(
-                Files.newInputStream(logFile, StandardOpenOption.READ), StandardCharsets.UTF_8));
-        // BufferedReaderを初期位置からではなく、FileChannelの現在位置から読み込ませるための対応
-        // ここでは新しくInputStreamReaderとBufferedReaderを作成し直すことで、
-        // Channelの現在位置から読み込むようにする。
+        this.input = Files.newInputStream(logFile, StandardOpenOption.READ);
+        // 入力ストリームはFileChannelとは独立に先頭から読み込む。
         // ただし、これでも厳密なリアルタイム監視には限界があり、WatchServiceなどがより適している場合がある。
         // 今回のシミュレーションでは、簡便さのためにこの方法を採用。
         Files.lines(logFile, StandardCharsets.UTF_8).skip(Long.MAX_VALUE).findAny(); // ストリームを最後まで読み飛ばす
@@ -41,40 +61,104 @@ class LogMonitor implements AutoCloseable {
         System.out.println("ログ監視を開始: " + logFile);
 
         while (running && !Thread.currentThread().isInterrupted()) {
-            String line;
-            // available()で読み込み可能なバイトがあるか確認
-            // 注意: available()はInputStreamの契約であり、FileChannelでは直接使えないため、
-            // pollingでファイルのサイズを比較する方が適切だが、readLineのブロックを避けるため
-            // 簡易的にBufferedReaderのready()を使用。
-            if (reader.ready()) { // 読み込み可能なデータがあるかチェック
-                while ((line = reader.readLine()) != null) {
-                    System.out.println("[監視] " + line);
-
-                    // アラート条件のチェック
-                    if (line.contains("[ERROR]")) {
-                        System.out.println("⚠️  エラーを検出しました！");
+            // 読み込み可能なデータがなくなるまで読み、行の途中は次回に持ち越す
+            // （readLineは書き込み途中の行も1行として返してしまうため、改行を自前で探す）
+            int n;
+            while (input.available() > 0 && (n = input.read(readBuffer)) > 0) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (readBuffer[i] == '\n') {
+                        appendPartial(start, i - start);
+                        handleLine(takePartialLine());
+                        start = i + 1;
                     }
                 }
+                appendPartial(start, n - start);
             }
 
             try {
-                Thread.sleep(200); // 監視間隔を少し長めに調整
+                Thread.sleep(pollIntervalMillis);
             } catch (InterruptedException e) {
                 // スレッドが中断されたらループを抜ける
                 Thread.currentThread().interrupt(); // 中断状態を再設定
                 break;
             }
         }
+        if (windower != null) {
+            windower.flush();
+            if (windower.getLateEvents() > 0) {
+                System.out.println("許容遅延を超えて破棄したログ: " + windower.getLateEvents() + "件");
+            }
+        }
         System.out.println("ログ監視を終了");
     }
 
+    private void handleLine(String line) {
+        if (echo) {
+            System.out.println("[監視] " + line);
+        }
+
+        // アラート条件のチェック
+        if (errorAlert && line.contains("[ERROR]")) {
+            System.out.println("⚠️  エラーを検出しました！");
+        }
+
+        // イベント時刻でウィンドウに振り分け（到着順が前後しても二重計上しない）
+        if (windower != null) {
+            LogEntry entry = parseLine(line);
+            if (entry != null) {
+                windower.accept(entry);
+            }
+        }
+
+        if (lineListener != null) {
+            lineListener.accept(line);
+        }
+    }
+
+    private void appendPartial(int offset, int length) {
+        if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLine.length * 2, partialLength + length));
+        }
+        System.arraycopy(readBuffer, offset, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private String takePartialLine() {
+        int length = partialLength;
+        if (length > 0 && partialLine[length - 1] == '\r') {
+            length--;
+        }
+        partialLength = 0;
+        return new String(partialLine, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public void setPollIntervalMillis(long pollIntervalMillis) { this.pollIntervalMillis = pollIntervalMillis; }
+    public void setEcho(boolean echo) { this.echo = echo; }
+    public void setErrorAlert(boolean errorAlert) { this.errorAlert = errorAlert; }
+    public void setLineListener(Consumer<String> lineListener) { this.lineListener = lineListener; }
+
+    /**
+     * 1行をLogEntryに変換（形式が合わない行や継続行はnull）
+     */
+    static LogEntry parseLine(String line) {
+        Matcher matcher = LINE_PATTERN.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+        LocalDateTime timestamp = LocalDateTime.parse(matcher.group(1));
+        String module = matcher.group(3) != null ? matcher.group(3) : "-";
+        Integer responseTime = matcher.group(5) != null ? Integer.parseInt(matcher.group(5)) : null;
+        return new LogEntry(timestamp, matcher.group(2), module, matcher.group(4), responseTime);
+    }
+
     // AutoCloseableインターフェースの実装。try-with-resourcesでLogMonitorが閉じられる時に呼ばれる
     @Override
     public void close() {
         running = false; // 監視ループを停止させる
         try {
-            if (reader != null) {
-                reader.close(); // BufferedReaderを閉じる
+            if (input != null) {
+                input.close(); // 入力ストリームを閉じる
             }
             if (fileChannel != null) {
                 fileChannel.close(); // FileChannelを閉じる
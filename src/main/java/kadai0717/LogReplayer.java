@@ -0,0 +1,227 @@
+package kadai0717;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ログリプレイツール（LogMonitorの負荷試験用）
+ * 既存ログのタイムスタンプ間隔を倍率で縮めて別ファイルへ追記し、
+ * 達成スループット（行/秒）とLogMonitorが検出するまでの遅延を計測する。
+ *
+ * 使い方: java kadai0717.LogReplayer <元ログ> <出力先> [倍率|max]
+ */
+public class LogReplayer {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long MIN_SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final Path source;
+    private final Path target;
+    private final double speed;   // 0以下または無限大なら待たずに最大速度で書く
+
+    // 書き込み側 → 監視側へ渡す「この行番号までを、この時刻に書いた」という記録
+    private final ConcurrentLinkedQueue<long[]> writeMarks = new ConcurrentLinkedQueue<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong detectedLines = new AtomicLong();
+    private long[] currentMark;   // 監視スレッドのみが使用
+
+    public LogReplayer(Path source, Path target, double speed) {
+        this.source = source;
+        this.target = target;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("使い方: java kadai0717.LogReplayer <元ログ> <出力先> [倍率|max]");
+            return;
+        }
+        double speed = args.length > 2 && !"max".equalsIgnoreCase(args[2]) ? Double.parseDouble(args[2]) : 0;
+        new LogReplayer(Paths.get(args[0]), Paths.get(args[1]), speed).run();
+    }
+
+    /**
+     * モニターを起動してリプレイし、結果を表示する
+     */
+    public void run() throws IOException, InterruptedException {
+        Files.deleteIfExists(target);
+
+        LogMonitor monitor = new LogMonitor(target);
+        monitor.setEcho(false);
+        monitor.setErrorAlert(false); // 大量のリプレイでアラート表示が計測を乱さないようにする
+        monitor.setPollIntervalMillis(1);
+        monitor.setLineListener(line -> onDetected());
+        Thread monitorThread = new Thread(() -> {
+            try (monitor) {
+                monitor.startMonitoring();
+            } catch (IOException e) {
+                System.err.println("監視エラー: " + e.getMessage());
+            }
+        }, "replay-monitor");
+        monitorThread.start();
+
+        long start = System.nanoTime();
+        long written = replay();
+        long replayNanos = System.nanoTime() - start;
+
+        // 監視側が追いつくまで待つ（最大10秒）
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (detectedLines.get() < written && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        long totalNanos = System.nanoTime() - start;
+        monitorThread.interrupt();
+        monitorThread.join(5000);
+
+        System.out.println("\n=== リプレイ結果 ===");
+        System.out.println("倍率: " + (speed > 0 && !Double.isInfinite(speed) ? speed + "倍" : "最大速度"));
+        System.out.println("書き込み行数: " + written);
+        System.out.printf("書き込みスループット: %.0f 行/秒%n", written * 1e9 / Math.max(1, replayNanos));
+        System.out.println("検出行数: " + detectedLines.get());
+        System.out.printf("検出スループット: %.0f 行/秒%n", detectedLines.get() * 1e9 / Math.max(1, totalNanos));
+        System.out.println("検出遅延: " + latency);
+    }
+
+    /**
+     * 元ログを読み、タイムスタンプ間隔を倍率で縮めながら出力先へ追記する
+     *
+     * @return 書き込んだ行数
+     */
+    long replay() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long lineCount = 0;
+        long bufferedLines = 0;
+        long firstEventMillis = Long.MIN_VALUE;
+        long lastDueNanos = 0;
+        long startNanos = System.nanoTime();
+        boolean paced = speed > 0 && !Double.isInfinite(speed);
+
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+             FileChannel channel = FileChannel.open(target,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // タイムスタンプのある行だけで待ち時間を決める（継続行は直前の行と一緒に書く）
+                LogEntry entry = paced ? LogMonitor.parseLine(line) : null;
+                if (entry != null) {
+                    long eventMillis = entry.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+                    if (firstEventMillis == Long.MIN_VALUE) {
+                        firstEventMillis = eventMillis;
+                    }
+                    // 時刻が前後している行は待たない（期限は単調増加にする）
+                    long dueNanos = (long) ((eventMillis - firstEventMillis) * 1_000_000L / speed);
+                    lastDueNanos = Math.max(lastDueNanos, dueNanos);
+                    long waitNanos = startNanos + lastDueNanos - System.nanoTime();
+                    if (waitNanos > MIN_SLEEP_NANOS) {
+                        lineCount += flush(channel, buffer, lineCount, bufferedLines);
+                        bufferedLines = 0;
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+
+                byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > buffer.remaining()) {
+                    lineCount += flush(channel, buffer, lineCount, bufferedLines);
+                    bufferedLines = 0;
+                }
+                if (bytes.length > buffer.capacity()) {
+                    writeMarks.add(new long[]{lineCount + 1, System.nanoTime()});
+                    channel.write(ByteBuffer.wrap(bytes));
+                    lineCount++;
+                } else {
+                    buffer.put(bytes);
+                    bufferedLines++;
+                }
+            }
+            lineCount += flush(channel, buffer, lineCount, bufferedLines);
+        }
+        return lineCount;
+    }
+
+    /**
+     * バッファの内容を1回のwriteで書き出す
+     *
+     * @return 書き出した行数
+     */
+    private long flush(FileChannel channel, ByteBuffer buffer, long linesBefore, long bufferedLines) throws IOException {
+        if (bufferedLines == 0) {
+            return 0;
+        }
+        // 書き込み前に記録しておくことで、監視側が先に行を読んでも対応する記録が必ず存在する
+        writeMarks.add(new long[]{linesBefore + bufferedLines, System.nanoTime()});
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return bufferedLines;
+    }
+
+    /**
+     * 監視側で1行検出されるたびに呼ばれる
+     */
+    private void onDetected() {
+        long index = detectedLines.getAndIncrement();
+        while (currentMark == null || index >= currentMark[0]) {
+            currentMark = writeMarks.poll();
+            if (currentMark == null) {
+                return; // リプレイ以外で書かれた行
+            }
+        }
+        latency.record(System.nanoTime() - currentMark[1]);
+    }
+
+    /**
+     * 2のべき乗幅のバケットで遅延を数える簡易ヒストグラム（マイクロ秒単位）
+     */
+    static class LatencyHistogram {
+        private final long[] buckets = new long[64];
+        private long count;
+        private long sumNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            buckets[64 - Long.numberOfLeadingZeros(micros)]++;
+            count++;
+            sumNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * パーセンタイル（該当バケットの上限値、マイクロ秒）
+         */
+        long percentileMicros(double p) {
+            long threshold = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= threshold && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) {
+                return "計測なし";
+            }
+            return String.format("平均=%.0fµs p50<=%dµs p99<=%dµs 最大=%dµs (%d件)",
+                    sumNanos / 1000.0 / count, percentileMicros(0.5), percentileMicros(0.99),
+                    maxNanos / 1000, count);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package kadai0717;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 非同期ローリングログライター
+ * 生成側はロックフリーキューに積むだけで戻り、バックグラウンドの書き込みスレッドが
+ * まとめてFileChannelへ書き出す。サイズまたは経過時間でローテーションする。
+ */
+class RollingLogWriter implements AutoCloseable {
+
+    /**
+     * fsync（FileChannel.force）を行うタイミング
+     */
+    enum FsyncPolicy {
+        NEVER,        // OSに任せる（最速）
+        EVERY_BATCH,  // バッチ書き込みごと（最も安全）
+        ON_ROTATE     // ローテーションとクローズ時のみ
+    }
+
+    private static final int BUFFER_SIZE = 256 * 1024;           // 1回のwriteにまとめる最大バイト数
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final Path logFile;
+    private final long maxBytes;          // 0以下ならサイズでローテーションしない
+    private final Duration maxAge;        // nullなら時間でローテーションしない
+    private final int maxArchives;        // 保持するアーカイブ数（app.log.1 ～ app.log.N）
+    private final boolean compress;       // trueならアーカイブをgzip圧縮する
+    private final FsyncPolicy fsyncPolicy;
+    private final long maxPending;        // キューに溜められる最大行数（超えたら破棄）
+
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong writtenLines = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong rotationCount = new AtomicLong();
+    private final AtomicBoolean writerParked = new AtomicBoolean();
+    private final AtomicInteger appending = new AtomicInteger(); // append中のスレッド数
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread writerThread;
+
+    private volatile boolean accepting = true;   // falseになった後のappendは受け付けない
+    private volatile boolean running = true;     // falseかつキューが空になったら書き込みスレッドが終わる
+    private FileChannel channel;          // 書き込みスレッドのみが触る
+    private long currentSize;
+    private long openedAtNanos;
+
+    public RollingLogWriter(Path logFile) throws IOException {
+        this(logFile, 10L * 1024 * 1024, null, 5, false, FsyncPolicy.ON_ROTATE, 1_000_000);
+    }
+
+    public RollingLogWriter(Path logFile, long maxBytes, Duration maxAge, int maxArchives,
+                            boolean compress, FsyncPolicy fsyncPolicy, long maxPending) throws IOException {
+        this.logFile = logFile;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.maxArchives = Math.max(1, maxArchives);
+        this.compress = compress;
+        this.fsyncPolicy = fsyncPolicy;
+        this.maxPending = maxPending;
+        openChannel();
+
+        this.writerThread = new Thread(this::runWriter, "rolling-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 1行を書き込みキューに積む（改行は自動で付加）
+     * ブロックせず、キューが満杯の場合は破棄してfalseを返す
+     */
+    public boolean append(String line) {
+        // 先にappend中であることを示してから受付状態を見る。closeは受付を止めてからappend中のスレッドがいなくなるのを待つので、
+        // ここでacceptingがtrueに見えた行は、書き込みスレッドが止まる前に必ずキューに入る
+        appending.incrementAndGet();
+        try {
+            if (!accepting || !running) {
+                return false;
+            }
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                droppedLines.incrementAndGet();
+                return false;
+            }
+            queue.offer(line);
+        } finally {
+            appending.decrementAndGet();
+        }
+        // 書き込みスレッドが待機中のときだけ起こす
+        if (writerParked.get() && writerParked.compareAndSet(true, false)) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    /**
+     * 書き込みスレッドのメインループ
+     */
+    private void runWriter() {
+        try {
+            while (running || !queue.isEmpty()) {
+                if (drainBatch() == 0) {
+                    writerParked.set(true);
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    writerParked.set(false);
+                }
+                if (shouldRotate()) {
+                    rotate();
+                }
+            }
+            flushBuffer();
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("ログ書き込みエラー: " + e.getMessage());
+            running = false;
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("ログファイルのクローズ中にエラー: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * キューにある行をバッファにまとめて書き出す
+     *
+     * @return 書き出した行数
+     */
+    private int drainBatch() throws IOException {
+        int count = 0;
+        String line;
+        while ((line = queue.poll()) != null) {
+            pending.decrementAndGet();
+            byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) {
+                flushBuffer();
+            }
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes)); // バッファより大きい行は直接書く
+            } else {
+                buffer.put(bytes);
+            }
+            count++;
+            // サイズ上限に達したら途中でもローテーションを優先する
+            if (maxBytes > 0 && currentSize + buffer.position() >= maxBytes) {
+                break;
+            }
+        }
+        if (count > 0) {
+            flushBuffer();
+            if (fsyncPolicy == FsyncPolicy.EVERY_BATCH) {
+                channel.force(false);
+            }
+            writtenLines.addAndGet(count);
+        }
+        return count;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            currentSize += channel.write(src);
+        }
+    }
+
+    private boolean shouldRotate() {
+        if (maxBytes > 0 && currentSize >= maxBytes) {
+            return true;
+        }
+        return maxAge != null && currentSize > 0
+                && System.nanoTime() - openedAtNanos >= maxAge.toNanos();
+    }
+
+    /**
+     * ローテーション: app.log → app.log.1(.gz)、既存のアーカイブは番号を1つずらす
+     */
+    private void rotate() throws IOException {
+        flushBuffer();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            channel.force(false);
+        }
+        channel.close();
+
+        Files.deleteIfExists(archivePath(maxArchives));
+        for (int i = maxArchives - 1; i >= 1; i--) {
+            Path source = archivePath(i);
+            if (Files.exists(source)) {
+                Files.move(source, archivePath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        if (compress) {
+            try (InputStream in = Files.newInputStream(logFile);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(archivePath(1)), BUFFER_SIZE)) {
+                in.transferTo(out);
+            }
+            Files.delete(logFile);
+        } else {
+            Files.move(logFile, archivePath(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        rotationCount.incrementAndGet();
+        openChannel();
+    }
+
+    private Path archivePath(int index) {
+        String suffix = "." + index + (compress ? ".gz" : "");
+        return logFile.resolveSibling(logFile.getFileName() + suffix);
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        currentSize = channel.size();
+        openedAtNanos = System.nanoTime();
+    }
+
+    public long getWrittenLines() { return writtenLines.get(); }
+    public long getDroppedLines() { return droppedLines.get(); }
+    public long getRotationCount() { return rotationCount.get(); }
+
+    /**
+     * キューに残っている行をすべて書き出してから終了する
+     */
+    @Override
+    public void close() {
+        accepting = false;
+        // 受付を止める前に始まったappendがキューに積み終わるのを待つ（ロックを取らずに済むよう短い待機を繰り返す）
+        while (appending.get() != 0) {
+            Thread.onSpinWait();
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
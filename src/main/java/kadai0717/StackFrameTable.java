@@ -0,0 +1,97 @@
+package kadai0717;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * スタックフレームとスタックトレースの共有テーブル
+ * 同じフレーム文字列・同じトレース（フレームIDの並び）は1つだけ保持し、
+ * ログエントリ側はトレースIDのintだけを持つ。繰り返し出るトレースでヒープが増えない。
+ */
+class StackFrameTable {
+    public static final int NO_TRACE = -1;
+
+    private final Map<String, Integer> frameIds = new HashMap<>();
+    private final List<String> frames = new ArrayList<>();
+    private final Map<TraceKey, Integer> traceIds = new HashMap<>();
+    private final List<int[]> traces = new ArrayList<>();
+
+    /**
+     * フレーム文字列をIDに変換（初出なら登録）
+     */
+    public int internFrame(String frame) {
+        Integer id = frameIds.get(frame);
+        if (id == null) {
+            id = frames.size();
+            frameIds.put(frame, id);
+            frames.add(frame);
+        }
+        return id;
+    }
+
+    /**
+     * フレームIDの並びをトレースIDに変換（初出なら登録）
+     */
+    public int internTrace(int[] frameIdBuffer, int length) {
+        if (length == 0) {
+            return NO_TRACE;
+        }
+        TraceKey probe = new TraceKey(frameIdBuffer, length);
+        Integer id = traceIds.get(probe);
+        if (id == null) {
+            int[] copy = Arrays.copyOf(frameIdBuffer, length);
+            id = traces.size();
+            traceIds.put(new TraceKey(copy, length), id);
+            traces.add(copy);
+        }
+        return id;
+    }
+
+    public String getFrame(int frameId) { return frames.get(frameId); }
+    public int[] getTrace(int traceId) { return traces.get(traceId).clone(); }
+
+    /**
+     * トレースの先頭（最も内側）のフレームID
+     */
+    public int getTopFrame(int traceId) {
+        return traces.get(traceId)[0];
+    }
+
+    public int getFrameCount() { return frames.size(); }
+    public int getTraceCount() { return traces.size(); }
+
+    /**
+     * int配列の先頭length要素を内容で比較するキー
+     */
+    private static final class TraceKey {
+        private final int[] frameIds;
+        private final int length;
+        private final int hash;
+
+        TraceKey(int[] frameIds, int length) {
+            this.frameIds = frameIds;
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + frameIds[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TraceKey other) || other.length != length) {
+                return false;
+            }
+            return Arrays.equals(frameIds, 0, length, other.frameIds, 0, length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package kadai0718;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// バイト列 → Stringの変換結果を使い回すキャッシュ (オープンアドレス法)
+// 商品名やカテゴリのように同じ値が何度も出る列で、行ごとのString生成を避ける
+class ByteStringCache {
+    private static final int MAX_ENTRIES = 1 << 16; // これを超えたらキャッシュせずに毎回デコード
+
+    private byte[][] keys = new byte[1024][];
+    private String[] values = new String[1024];
+    private int[] hashes = new int[1024];
+    private int size;
+
+    /**
+     * buf[from, to) をUTF-8としてデコードした文字列を返す（同じ内容なら同じインスタンス）
+     */
+    String get(byte[] buf, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, buf, from, to)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = new String(buf, from, to - from, StandardCharsets.UTF_8);
+        if (size < MAX_ENTRIES) {
+            keys[slot] = Arrays.copyOfRange(buf, from, to);
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        }
+        return value;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
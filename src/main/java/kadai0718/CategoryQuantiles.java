@@ -0,0 +1,88 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// カテゴリごとの売上金額（個数×単価）の分位点スケッチ
+// SaleRowHandlerとして解析中の行から直接更新するので、金額の一覧を溜めて並べ替える必要がない。
+// メモリはカテゴリ数×スケッチの大きさで決まり、行数には依存しない。
+public class CategoryQuantiles implements SaleRowHandler {
+    private final int k;
+    private final Map<String, QuantileSketch> sketches = new LinkedHashMap<>();
+
+    public CategoryQuantiles() {
+        this(QuantileSketch.DEFAULT_K);
+    }
+
+    public CategoryQuantiles(int k) {
+        this.k = k;
+    }
+
+    /**
+     * CSVファイルを並列に読み込み、範囲ごとのスケッチを統合して返す
+     * スケッチの圧縮は統合の順序で結果が変わるため、解析の完了順ではなくファイル内の順序で統合する
+     * （範囲の分け方はスレッド数で決まるので、同じファイル・同じ並列度なら毎回同じ結果になる）
+     */
+    public static CategoryQuantiles load(Path file, ParallelSalesLoader.ErrorReporter errors) throws IOException {
+        List<CategoryQuantiles> chunks = new ParallelSalesLoader().loadChunks(file, true, CategoryQuantiles::new, errors);
+        CategoryQuantiles result = new CategoryQuantiles();
+        for (CategoryQuantiles chunk : chunks) {
+            result.merge(chunk);
+        }
+        return result;
+    }
+
+    @Override
+    public void onRow(long lineNumber, String productName, String category, int quantity, int unitPrice, long epochSecond) {
+        add(category, (long) quantity * unitPrice);
+    }
+
+    public void add(String category, long amount) {
+        sketches.computeIfAbsent(category, c -> new QuantileSketch(k)).add(amount);
+    }
+
+    public void add(SaleRecord record) {
+        add(record.getCategory(), (long) record.getQuantity() * record.getUnitPrice());
+    }
+
+    /**
+     * 別の集計（並列処理の部分結果や別の日の集計）をまとめる
+     */
+    public void merge(CategoryQuantiles other) {
+        other.sketches.forEach((category, sketch) ->
+                sketches.computeIfAbsent(category, c -> new QuantileSketch(k)).merge(sketch));
+    }
+
+    /**
+     * カテゴリのq分位点（そのカテゴリの売上がなければ例外）
+     */
+    public long quantile(String category, double q) {
+        QuantileSketch sketch = sketches.get(category);
+        if (sketch == null) {
+            throw new IllegalArgumentException("売上のないカテゴリです: " + category);
+        }
+        return sketch.quantile(q);
+    }
+
+    public QuantileSketch getSketch(String category) {
+        return sketches.get(category);
+    }
+
+    public Map<String, QuantileSketch> getSketches() {
+        return sketches;
+    }
+
+    /**
+     * カテゴリごとの件数・中央値・95パーセンタイル・最大値を表示する
+     */
+    public void printReport() {
+        sketches.forEach((category, sketch) -> {
+            long[] values = sketch.quantiles(0.5, 0.95);
+            System.out.println(category + ": " + sketch.getCount() + "件, 中央値 " + values[0] + "円, 95%点 "
+                    + values[1] + "円, 最大 " + sketch.getMax() + "円");
+        });
+    }
+}
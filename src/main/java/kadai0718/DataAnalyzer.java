@@ -3,13 +3,18 @@ package kadai0718;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PrimitiveIterator;
 import java.util.stream.Collectors;
 
 // メインのデータ分析クラス
@@ -18,16 +23,31 @@ public class DataAnalyzer {
     /**
      * CSVの1行を解析し、SaleRecordオブジェクトに変換するメソッド。
      * 解析に失敗した場合はOptional.empty()を返すことで、nullを返さないようにします (null安全性)。
+     * 失敗した行は標準エラーに出力します（大量の行を読む場合は、不正な行の受け取り先を指定する版を使ってください）。
      *
      * @param line CSVファイルの1行の文字列
      * @return 解析成功時はSaleRecordをラップしたOptional、失敗時は空のOptional
      */
     public static Optional<SaleRecord> parseSaleRecord(String line) {
+        return parseSaleRecord(line, 0, (lineNumber, error, rawLine) ->
+                System.err.println("WARN: " + error.getDescription() + "のため行をスキップ: " + rawLine));
+    }
+
+    /**
+     * CSVの1行を解析し、SaleRecordオブジェクトに変換するメソッド。
+     * 失敗した行は標準エラーに出力せず、行番号とエラーの種類をつけてrejectionsに渡します。
+     *
+     * @param line       CSVファイルの1行の文字列
+     * @param lineNumber ファイル先頭からの行番号（ヘッダー行を含む）
+     * @param rejections 不正な行の受け取り先
+     * @return 解析成功時はSaleRecordをラップしたOptional、失敗時は空のOptional
+     */
+    public static Optional<SaleRecord> parseSaleRecord(String line, long lineNumber, ParallelSalesLoader.ErrorReporter rejections) {
         // カンマで文字列を分割し、各フィールドの配列を得る
         String[] parts = line.split(",");
         // フィールド数が期待通りでない場合は解析失敗とみなす
         if (parts.length != 5) {
-            System.err.println("WARN: 無効な行フォーマットのためスキップ: " + line);
+            rejections.report(lineNumber, SalesCsvReader.ParseError.FIELD_COUNT, line);
             // Optional型を使い、空のOptionalを返す
             return Optional.empty();
         }
@@ -46,26 +66,37 @@ public class DataAnalyzer {
             return Optional.of(new SaleRecord(productName, category, quantity, unitPrice, saleDateTime));
         } catch (NumberFormatException e) {
             // 数値変換エラーが発生した場合
-            System.err.println("WARN: 数値変換エラーのため行をスキップ (" + line + "): " + e.getMessage());
+            rejections.report(lineNumber, SalesCsvReader.ParseError.NUMBER_FORMAT, line);
             return Optional.empty();
         } catch (DateTimeParseException e) {
             // 日付時刻の解析エラーが発生した場合
-            System.err.println("WARN: 日付時刻解析エラーのため行をスキップ (" + line + "): " + e.getMessage());
-            return Optional.empty();
-        } catch (Exception e) {
-            // その他の予期せぬエラーが発生した場合
-            System.err.println("ERROR: 行の解析中に予期せぬエラーが発生しました (" + line + "): " + e.getMessage());
+            rejections.report(lineNumber, SalesCsvReader.ParseError.DATE_TIME, line);
             return Optional.empty();
         }
     }
 
     /**
      * 指定されたファイルパスからCSVデータを読み込み、SaleRecordのリストとして返すメソッド。
+     * 不正な行は件数と最初の数件だけを、読み込みの最後にまとめて標準エラーに出力します。
      *
      * @param filePath 読み込むCSVファイルのパス
      * @return SaleRecordオブジェクトのリスト
      */
     public static List<SaleRecord> loadData(String filePath) {
+        RejectedRowSink rejections = new RejectedRowSink();
+        List<SaleRecord> records = loadData(filePath, rejections);
+        rejections.printSummary();
+        return records;
+    }
+
+    /**
+     * 指定されたファイルパスからCSVデータを読み込み、SaleRecordのリストとして返すメソッド。
+     *
+     * @param filePath   読み込むCSVファイルのパス
+     * @param rejections 不正な行の受け取り先
+     * @return SaleRecordオブジェクトのリスト
+     */
+    public static List<SaleRecord> loadData(String filePath, ParallelSalesLoader.ErrorReporter rejections) {
         // データを格納するリスト
         List<SaleRecord> records = new ArrayList<>();
         // try-with-resources文を使用し、BufferedReaderが自動的に閉じられるようにする
@@ -73,11 +104,13 @@ public class DataAnalyzer {
             String line;
             // ヘッダー行をスキップする場合（CSVの1行目がヘッダーなら）
             br.readLine();
+            long lineNumber = 1;
 
             // ファイルの最後まで1行ずつ読み込む
             while ((line = br.readLine()) != null) {
+                lineNumber++;
                 // 各行を解析し、Optional.ifPresentを使って、解析成功した場合のみリストに追加
-                parseSaleRecord(line).ifPresent(records::add);
+                parseSaleRecord(line, lineNumber, rejections).ifPresent(records::add);
             }
         } catch (IOException e) {
             // ファイルの読み込み中にエラーが発生した場合
@@ -87,8 +120,154 @@ public class DataAnalyzer {
         return records;
     }
 
+    /**
+     * loadDataの高速版。バイト列のままCSVを解析し、数値列は中間Stringを作らずに変換する。
+     * 商品名・カテゴリの文字列は同じ値なら同じインスタンスを使い回す。
+     *
+     * @param filePath 読み込むCSVファイルのパス
+     * @return SaleRecordオブジェクトのリスト
+     */
+    public static List<SaleRecord> loadDataFast(String filePath) {
+        List<SaleRecord> records = new ArrayList<>();
+        RejectedRowSink rejections = new RejectedRowSink();
+        try {
+            SalesCsvReader.read(Path.of(filePath), new SaleRowHandler() {
+                @Override
+                public void onRow(long lineNumber, String productName, String category, int quantity, int unitPrice, long epochSecond) {
+                    onRow(lineNumber, productName, category, quantity, unitPrice, epochSecond, 0);
+                }
+
+                @Override
+                public void onRow(long lineNumber, String productName, String category, int quantity, int unitPrice,
+                                  long epochSecond, int nanoOfSecond) {
+                    // loadDataと同じ日時になるよう小数秒も保つ
+                    records.add(new SaleRecord(productName, category, quantity, unitPrice,
+                            LocalDateTime.ofEpochSecond(epochSecond, nanoOfSecond, ZoneOffset.UTC)));
+                }
+
+                @Override
+                public void onError(long lineNumber, SalesCsvReader.ParseError error, String rawLine) {
+                    rejections.report(lineNumber, error, rawLine);
+                }
+            });
+            rejections.printSummary();
+        } catch (IOException e) {
+            System.err.println("ERROR: ファイルの読み込み中にエラーが発生しました: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return records;
+    }
+
+    /**
+     * 大きなCSVファイルをメモリマップして複数スレッドで読み込むメソッド。
+     * 行の順序はファイル内の順序のまま保たれ、不正な行は絶対行番号つきの見本と件数にまとめて報告されます。
+     *
+     * @param filePath 読み込むCSVファイルのパス
+     * @return SaleRecordオブジェクトのリスト
+     */
+    public static List<SaleRecord> loadDataParallel(String filePath) {
+        RejectedRowSink rejections = new RejectedRowSink();
+        try {
+            List<SaleRecord> records = new ParallelSalesLoader().loadRecords(Path.of(filePath), true, rejections);
+            rejections.printSummary();
+            return records;
+        } catch (IOException e) {
+            System.err.println("ERROR: ファイルの読み込み中にエラーが発生しました: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    // ===== mainの各分析（ベンチマークからも同じ処理を呼び出す） =====
+
+    /**
+     * カテゴリ別の総売上（個数×単価）
+     */
+    public static Map<String, Long> categorySales(List<SaleRecord> sales) {
+        return sales.stream() // Streamを生成
+                .collect(Collectors.groupingBy(
+                        SaleRecord::getCategory,
+                        // 各カテゴリの総売上（個数×単価）を計算 (ラムダ式)
+                        // intでは約21億円を超えると桁あふれするため、longで掛け算・合計する
+                        Collectors.summingLong(s -> (long) s.getQuantity() * s.getUnitPrice())
+                ));
+    }
+
+    /**
+     * 基準日時以降の売上を販売日時が新しい順に返す
+     */
+    public static List<SaleRecord> salesAfter(List<SaleRecord> sales, LocalDateTime cutoffDate) {
+        return sales.stream() // Streamを生成
+                .filter(s -> s.getSaleDateTime().isAfter(cutoffDate) || s.getSaleDateTime().isEqual(cutoffDate)) // フィルタリング (ラムダ式, Date and Time API)
+                .sorted(Comparator.comparing(SaleRecord::getSaleDateTime).reversed()) // 販売日時で降順にソート (メソッド参照, ラムダ式, Comparator)
+                .collect(Collectors.toList()); // 結果をリストに収集
+    }
+
+    /**
+     * 売上個数が最も多い売上
+     */
+    public static Optional<SaleRecord> topSellingProduct(List<SaleRecord> sales) {
+        return sales.stream() // Streamを生成
+                .max(Comparator.comparingInt(SaleRecord::getQuantity)); // 個数で最大値を見つける (ラムダ式, Comparator)
+    }
+
+    /**
+     * 指定カテゴリの「商品名: 売上額」の一覧（重複なし）
+     */
+    public static List<String> salesDetails(List<SaleRecord> sales, String category) {
+        return sales.stream()
+                // 指定カテゴリのものをフィルタリング
+                .filter(s -> category.equals(s.getCategory()))
+                // 商品名と売上額の文字列に変換 (ラムダ式)
+                .map(s -> s.getProductName() + ": " + (s.getQuantity() * s.getUnitPrice()) + "円")
+                // 重複する結果があれば排除
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * カテゴリ別・商品別・日別の総売上を、結果キャッシュを通して求めて表示するメソッド。
+     * CSVが前回から変わっていなければ保存済みの結果を返すだけで、CSVは読み込まない。
+     *
+     * @param csvFile 売上CSVのパス
+     * @param cache   結果キャッシュ
+     */
+    public static void printCachedReport(Path csvFile, ResultCache cache) throws IOException {
+        // 3つの集計のどれかがキャッシュになかった場合だけ、テーブルを1度読み込んで使い回す
+        SalesTable[] table = new SalesTable[1];
+        RejectedRowSink rejections = new RejectedRowSink();
+        ResultCache.Loader<SalesTable> load = () -> {
+            if (table[0] == null) {
+                table[0] = SalesTable.loadParallel(csvFile, rejections);
+            }
+            return table[0];
+        };
+        System.out.println("カテゴリ別総売上: " + cache.get(csvFile, ResultCache.signature("categoryTotals"), ResultCache.TOTALS,
+                () -> load.compute().categoryTotals()));
+        for (SalesAggregator.Dimension dimension : new SalesAggregator.Dimension[] {
+                SalesAggregator.Dimension.PRODUCT, SalesAggregator.Dimension.DAY}) {
+            Map<String, Long> totals = cache.get(csvFile, ResultCache.signature("revenueBy", dimension), ResultCache.TOTALS,
+                    () -> {
+                        SalesTable loaded = load.compute();
+                        return SalesAggregator.namedTotals(loaded, dimension, SalesAggregator.revenueByParallel(loaded, dimension));
+                    });
+            System.out.println((dimension == SalesAggregator.Dimension.PRODUCT ? "商品別" : "日別") + "総売上: " + totals);
+        }
+        rejections.printSummary(); // CSVを読み込まなかった場合は何も出さない
+    }
+
     // メインメソッド: プログラムのエントリポイント
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // --follow <CSV> を指定した場合は、追記される売上を追跡して集計を更新し続ける
+        if (args.length >= 2 && args[0].equals("--follow")) {
+            SalesFollower.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // --report <CSV> を指定した場合は、結果キャッシュ（.analyzer-cache）を使って集計だけを表示する
+        if (args.length == 2 && args[0].equals("--report")) {
+            printCachedReport(Path.of(args[1]), new ResultCache(Path.of(".analyzer-cache"), 64L << 20));
+            return;
+        }
         // CSVファイルのパスを指定 (sales_data.csvがプロジェクトのルートディレクトリにあることを想定)
         String csvFilePath = "sales_data.csv";
         // データを読み込む
@@ -104,29 +283,20 @@ public class DataAnalyzer {
 
         //カテゴリ別の総売上を計算
         System.out.println("--- カテゴリ別総売上 ---");
-        Map<String, Integer> categorySales = sales.stream() // Streamを生成
-                .collect(Collectors.groupingBy(
-                        SaleRecord::getCategory,
-                        // 各カテゴリの総売上（個数×単価）を計算 (ラムダ式)
-                        Collectors.summingInt(s -> s.getQuantity() * s.getUnitPrice())
-                ));
+        Map<String, Long> categorySales = categorySales(sales);
         categorySales.forEach((category, total) -> System.out.println(category + ": " + total + "円")); // 結果を表示
         System.out.println("\n--------------------\n");
 
         //2024年7月2日以降の売上を抽出し、販売日時が新しい順に表示
         System.out.println("--- 2024年7月2日以降の売上 (新しい順) ---");
         LocalDateTime cutoffDate = LocalDateTime.of(2024, 7, 2, 0, 0, 0); // 基準日時を設定 (Date and Time API)
-        List<SaleRecord> salesAfterCutoff = sales.stream() // Streamを生成
-                .filter(s -> s.getSaleDateTime().isAfter(cutoffDate) || s.getSaleDateTime().isEqual(cutoffDate)) // フィルタリング (ラムダ式, Date and Time API)
-                .sorted(Comparator.comparing(SaleRecord::getSaleDateTime).reversed()) // 販売日時で降順にソート (メソッド参照, ラムダ式, Comparator)
-                .collect(Collectors.toList()); // 結果をリストに収集
+        List<SaleRecord> salesAfterCutoff = salesAfter(sales, cutoffDate);
         salesAfterCutoff.forEach(System.out::println); // 結果を表示
         System.out.println("\n--------------------\n");
 
         //最も売上個数が多い商品名をOptional型で安全に取得
         System.out.println("--- 最も売れた商品 ---");
-        Optional<SaleRecord> topSellingProduct = sales.stream() // Streamを生成
-                .max(Comparator.comparingInt(SaleRecord::getQuantity)); // 個数で最大値を見つける (ラムダ式, Comparator)
+        Optional<SaleRecord> topSellingProduct = topSellingProduct(sales);
 
         // Optional.ifPresentOrElseを使って、結果が存在する場合としない場合で異なる処理を行う (Optional型)
         // もしOptionalが値を含んでいたら
@@ -140,14 +310,64 @@ public class DataAnalyzer {
 
         //特定のカテゴリ（例: "飲料"）の売上のみを抽出し、商品名と合計売上額を表示
         System.out.println("--- 飲料カテゴリの売上詳細 ---");
-        sales.stream()
-                // カテゴリが"飲料"のものをフィルタリング
-                .filter(s -> "飲料".equals(s.getCategory()))
-                // 商品名と売上額の文字列に変換 (ラムダ式)
-                .map(s -> s.getProductName() + ": " + (s.getQuantity() * s.getUnitPrice()) + "円")
-                // 重複する結果があれば排除
-                .distinct()
-                .forEach(System.out::println);
+        salesDetails(sales, "飲料").forEach(System.out::println);
+        System.out.println("\n--------------------\n");
+
+        // --- 列指向テーブルを使った同じ分析 ---
+        // 行オブジェクトを作らず、列ごとの配列をループで走査する (大量データ向け)
+        System.out.println("--- 列指向テーブルでの分析 ---");
+        SalesTable table = SalesTable.fromRecords(sales);
+        System.out.println("カテゴリ別総売上: " + table.categoryTotals());
+        // プリミティブのグループ集計表で商品別・日別の売上を集計
+        System.out.println("商品別総売上: " + SalesAggregator.namedTotals(table, SalesAggregator.Dimension.PRODUCT,
+                SalesAggregator.revenueBy(table, SalesAggregator.Dimension.PRODUCT)));
+        System.out.println("日別総売上: " + SalesAggregator.namedTotals(table, SalesAggregator.Dimension.DAY,
+                SalesAggregator.revenueByParallel(table, SalesAggregator.Dimension.DAY)));
+        SalesTable.Cursor cursor = table.cursor();
+        System.out.println("2024年7月2日以降の売上 (新しい順):");
+        // 時刻インデックスを1度作れば、期間の絞り込みは二分探索だけで済み、再ソートも不要
+        SalesTimeIndex timeIndex = SalesTimeIndex.build(table);
+        PrimitiveIterator.OfInt newestFirst = timeIndex.range(cutoffDate, null).descending();
+        while (newestFirst.hasNext()) {
+            cursor.moveTo(newestFirst.nextInt());
+            System.out.println("  " + cursor.toRecord());
+        }
+        int topRow = table.maxQuantityRow();
+        if (topRow >= 0) {
+            cursor.moveTo(topRow);
+            System.out.println("最も売れた商品: " + cursor.getProductName() + " (" + cursor.getQuantity() + "個)");
+        }
+        // 問い合わせエンジン: 新しい分析はストリームを書き足さずに組み立てられる
+        System.out.println("カテゴリ別売上 (多い順):");
+        SalesQuery.from(table)
+                .groupBy(SalesQuery.Column.CATEGORY, SalesQuery.Column.AMOUNT)
+                .orderBy("sum", true)
+                .execute().print();
+        // 分位点スケッチ: 金額を溜めて並べ替えずに、カテゴリごとの中央値・95%点を固定メモリで求める
+        System.out.println("カテゴリ別の売上金額の分布:");
+        CategoryQuantiles quantiles = new CategoryQuantiles();
+        sales.forEach(quantiles::add);
+        quantiles.printReport();
+        // 事前集計キューブ: カテゴリ・商品・日の組み合わせを1度だけ集計し、以降の問い合わせは元データを走査せずに答える
+        RollupCube cube = RollupCube.build(table);
+        System.out.println("キューブ: " + cube.getDayCount() + "日分 (" + cube.getFirstDay() + " ～ " + cube.getLastDay() + ")");
+        System.out.println("  2024年7月2日以降のカテゴリ別売上: " + cube.revenueByCategory(cutoffDate.toLocalDate(), null));
+        System.out.println("  飲料の日別売上: " + cube.revenueByDay("飲料", null, null, null));
+        // ウィンドウ関数: 日別の系列を1回なめるだけで移動平均・累計・前日比を求める
+        System.out.println("カテゴリ別の日次推移:");
+        WindowFunctions.printDailyReport(table, 7);
+        // 商品マスタとの結合: 辞書IDをキーにしたハッシュ表を引き、ブランド別の粗利を配列で集計する
+        Path masterFile = Path.of("product_master.csv");
+        if (Files.exists(masterFile)) {
+            ProductMasterJoin join = ProductMasterJoin.build(table, ProductMaster.load(masterFile));
+            System.out.println("ブランド別の粗利:");
+            join.summarize(ProductMasterJoin.GroupKey.BRAND).print();
+            // カテゴリ階層: 大分類で集計し、その内訳を小分類で見る
+            System.out.println("大分類別の粗利:");
+            join.summarize(ProductMasterJoin.GroupKey.MAJOR_CATEGORY).print();
+            System.out.println("小分類別の粗利:");
+            join.summarize(ProductMasterJoin.GroupKey.MINOR_CATEGORY).print();
+        }
         System.out.println("\n--------------------\n");
     }
 }
\ No newline at end of file
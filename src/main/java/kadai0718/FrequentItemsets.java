@@ -0,0 +1,386 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// 「一緒に買われた商品」の頻出アイテム集合を FP-growth で求めるクラス
+// 同じ販売日時の行を1つの買い物かご（トランザクション）とみなす（売上データに店舗の列はないため、日時だけでまとめる）。
+// 商品は辞書ID、FP木はノードごとの属性をプリミティブ配列で持つ（ノードオブジェクトを作らない）。
+// Aprioriのように候補の組み合わせを列挙せず、条件付きFP木を再帰的に作って数えるので、候補数でメモリが膨らまない。
+// 先頭の商品ごとの条件付き木の探索は互いに独立なので、ForkJoinで並列に行う。
+public class FrequentItemsets {
+
+    // 頻出アイテム集合（商品の辞書IDと、それを含むかごの数）
+    public static class Itemset {
+        private final int[] productIds;
+        private final long support;
+
+        Itemset(int[] productIds, long support) {
+            this.productIds = productIds;
+            this.support = support;
+        }
+
+        public int[] getProductIds() { return productIds.clone(); }
+        public int size() { return productIds.length; }
+        public long getSupport() { return support; }
+
+        public List<String> getProductNames(StringDictionary products) {
+            List<String> names = new ArrayList<>(productIds.length);
+            for (int id : productIds) {
+                names.add(products.valueOf(id));
+            }
+            return names;
+        }
+    }
+
+    private final SalesTable table;
+    private final long minSupport;
+    private int maxLength = Integer.MAX_VALUE;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // 頻出商品の順位（支持度の降順）と辞書IDの対応
+    private int[] rankOfProduct;
+    private int[] productOfRank;
+    private long basketCount;
+
+    /**
+     * @param minSupport 最小支持度（その集合を含むかごの数がこれ以上のものを出力する）
+     */
+    public FrequentItemsets(SalesTable table, long minSupport) {
+        if (minSupport < 1) {
+            throw new IllegalArgumentException("最小支持度は1以上を指定してください: " + minSupport);
+        }
+        this.table = table;
+        this.minSupport = minSupport;
+    }
+
+    /**
+     * 最小支持度をかご全体に対する割合で指定する（例: 0.01 なら1%以上のかごに含まれる集合）
+     */
+    public static FrequentItemsets withSupportRatio(SalesTable table, double ratio) {
+        long baskets = countBaskets(table);
+        return new FrequentItemsets(table, Math.max(1, (long) Math.ceil(ratio * baskets)));
+    }
+
+    // 出力する集合の最大の大きさ
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // 使い方: java kadai0718.FrequentItemsets <売上CSV> <最小支持度の割合> [最大の大きさ]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("使い方: java kadai0718.FrequentItemsets <売上CSV> <最小支持度の割合> [最大の大きさ]");
+            return;
+        }
+        RejectedRowSink rejections = new RejectedRowSink();
+        SalesTable table = SalesTable.loadParallel(Paths.get(args[0]), rejections);
+        rejections.printSummary();
+        FrequentItemsets miner = withSupportRatio(table, Double.parseDouble(args[1]));
+        if (args.length > 2) {
+            miner.setMaxLength(Integer.parseInt(args[2]));
+        }
+        long start = System.nanoTime();
+        List<Itemset> itemsets = miner.mine();
+        System.out.printf("かご %d件から頻出集合 %d件 (%.1f秒)%n",
+                miner.getBasketCount(), itemsets.size(), (System.nanoTime() - start) / 1e9);
+        System.out.println("--- 一緒に買われた商品 (上位20件) ---");
+        itemsets.stream()
+                .filter(itemset -> itemset.size() >= 2)
+                .limit(20)
+                .forEach(itemset -> System.out.println(itemset.getProductNames(table.getProducts())
+                        + ": " + itemset.getSupport() + "件"));
+    }
+
+    /**
+     * 頻出アイテム集合を求める（支持度の降順、同じなら小さい集合が先）
+     */
+    public List<Itemset> mine() {
+        int[] rows = SalesTimeIndex.sortRows(table.epochSecondColumn(), table.size());
+        FpTree tree = buildTree(rows);
+
+        // 先頭の商品ごとに独立に探索する
+        List<MineTask> tasks = new ArrayList<>();
+        for (int rank = tree.itemCount - 1; rank >= 0; rank--) {
+            if (tree.support[rank] >= minSupport) {
+                tasks.add(new MineTask(tree, rank));
+            }
+        }
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                ForkJoinTask.invokeAll(tasks);
+                return null;
+            }
+        });
+
+        // 順位を辞書IDに戻す
+        List<Itemset> result = new ArrayList<>();
+        for (MineTask task : tasks) {
+            for (Itemset found : task.found) {
+                int[] ids = new int[found.productIds.length];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = productOfRank[found.productIds[i]];
+                }
+                Arrays.sort(ids);
+                result.add(new Itemset(ids, found.support));
+            }
+        }
+        result.sort((a, b) -> a.support != b.support ? Long.compare(b.support, a.support)
+                : a.productIds.length != b.productIds.length ? Integer.compare(a.productIds.length, b.productIds.length)
+                : Arrays.compare(a.productIds, b.productIds));
+        return result;
+    }
+
+    public long getBasketCount() { return basketCount; }
+
+    // ===== かごの作成とFP木の構築 =====
+
+    // 販売日時の異なる値の数（=かごの数）
+    static long countBaskets(SalesTable table) {
+        long[] seconds = table.epochSecondColumn();
+        int[] rows = SalesTimeIndex.sortRows(seconds, table.size());
+        long baskets = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (i == 0 || seconds[rows[i]] != seconds[rows[i - 1]]) {
+                baskets++;
+            }
+        }
+        return baskets;
+    }
+
+    // 時刻順の行番号からかごを作り、1回目で商品ごとの支持度を数え、2回目で頻出商品だけをFP木に入れる
+    private FpTree buildTree(int[] rows) {
+        long[] seconds = table.epochSecondColumn();
+        int[] productIds = table.productIdColumn();
+        int productCount = table.getProducts().size();
+
+        long[] productSupport = new long[productCount];
+        int[] lastBasket = new int[productCount]; // 同じかごで同じ商品を二重に数えないための印
+        Arrays.fill(lastBasket, -1);
+        int basket = -1;
+        for (int i = 0; i < rows.length; i++) {
+            if (i == 0 || seconds[rows[i]] != seconds[rows[i - 1]]) {
+                basket++;
+            }
+            int product = productIds[rows[i]];
+            if (lastBasket[product] != basket) {
+                lastBasket[product] = basket;
+                productSupport[product]++;
+            }
+        }
+        basketCount = basket + 1;
+
+        // 頻出商品に支持度の降順で順位をつける（FP木では順位の小さい商品ほど根に近い）
+        Integer[] order = new Integer[productCount];
+        for (int id = 0; id < productCount; id++) {
+            order[id] = id;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(productSupport[b], productSupport[a]));
+        rankOfProduct = new int[productCount];
+        Arrays.fill(rankOfProduct, -1);
+        int frequent = 0;
+        while (frequent < productCount && productSupport[order[frequent]] >= minSupport) {
+            rankOfProduct[order[frequent]] = frequent;
+            frequent++;
+        }
+        productOfRank = new int[frequent];
+        for (int rank = 0; rank < frequent; rank++) {
+            productOfRank[rank] = order[rank];
+        }
+
+        FpTree tree = new FpTree(frequent, Math.max(16, rows.length / 4));
+        int[] items = new int[Math.max(1, frequent)];
+        int length = 0;
+        Arrays.fill(lastBasket, -1);
+        basket = -1;
+        for (int i = 0; i <= rows.length; i++) {
+            boolean newBasket = i == rows.length || i == 0 || seconds[rows[i]] != seconds[rows[i - 1]];
+            if (newBasket && length > 0) {
+                Arrays.sort(items, 0, length);
+                tree.insert(items, length, 1);
+                length = 0;
+            }
+            if (i == rows.length) {
+                break;
+            }
+            if (newBasket) {
+                basket++;
+            }
+            int product = productIds[rows[i]];
+            int rank = rankOfProduct[product];
+            if (rank >= 0 && lastBasket[product] != basket) {
+                lastBasket[product] = basket;
+                items[length++] = rank;
+            }
+        }
+        return tree;
+    }
+
+    // ===== 探索 =====
+
+    // 1つの商品を末尾（接尾辞）とする集合をすべて探すタスク
+    @SuppressWarnings("serial") // ForkJoinTaskはSerializableだが、タスクを直列化することはない
+    private class MineTask extends RecursiveTask<Void> {
+        private final FpTree tree;
+        private final int rank;
+        final List<Itemset> found = new ArrayList<>(); // 見つけた集合（この時点では商品の順位で表す）
+
+        MineTask(FpTree tree, int rank) {
+            this.tree = tree;
+            this.rank = rank;
+        }
+
+        @Override
+        protected Void compute() {
+            mineItem(tree, rank, new int[0]);
+            return null;
+        }
+
+        private void mineItem(FpTree tree, int item, int[] suffix) {
+            int[] itemset = Arrays.copyOf(suffix, suffix.length + 1);
+            itemset[suffix.length] = item;
+            found.add(new Itemset(itemset, tree.support[item]));
+            if (itemset.length >= maxLength) {
+                return;
+            }
+            FpTree conditional = tree.conditionalTree(item, minSupport);
+            if (conditional == null) {
+                return;
+            }
+            for (int next = conditional.itemCount - 1; next >= 0; next--) {
+                if (conditional.support[next] >= minSupport) {
+                    mineItem(conditional, next, itemset);
+                }
+            }
+        }
+    }
+
+    // 配列で表したFP木。ノード0は根。itemは商品の順位
+    private static class FpTree {
+        final int itemCount;
+        final long[] support;     // 商品ごとの支持度（木に入っている数の合計）
+        final int[] head;         // 商品ごとの最初のノード（同じ商品のノードはnodeLinkでつながる）
+        int[] item;
+        int[] parent;
+        int[] firstChild;
+        int[] nextSibling;
+        int[] nodeLink;
+        long[] count;
+        int size;
+
+        FpTree(int itemCount, int initialCapacity) {
+            this.itemCount = itemCount;
+            support = new long[itemCount];
+            head = new int[itemCount];
+            Arrays.fill(head, -1);
+            item = new int[initialCapacity];
+            parent = new int[initialCapacity];
+            firstChild = new int[initialCapacity];
+            nextSibling = new int[initialCapacity];
+            nodeLink = new int[initialCapacity];
+            count = new long[initialCapacity];
+            newNode(-1, -1); // 根
+        }
+
+        private int newNode(int itemRank, int parentNode) {
+            if (size == item.length) {
+                int capacity = size * 2;
+                item = Arrays.copyOf(item, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                nodeLink = Arrays.copyOf(nodeLink, capacity);
+                count = Arrays.copyOf(count, capacity);
+            }
+            int node = size++;
+            item[node] = itemRank;
+            parent[node] = parentNode;
+            firstChild[node] = -1;
+            count[node] = 0;
+            if (parentNode >= 0) {
+                nextSibling[node] = firstChild[parentNode];
+                firstChild[parentNode] = node;
+                nodeLink[node] = head[itemRank];
+                head[itemRank] = node;
+            } else {
+                nextSibling[node] = -1;
+                nodeLink[node] = -1;
+            }
+            return node;
+        }
+
+        // 順位の昇順に並んだ商品列を、n件分として木に加える
+        void insert(int[] items, int length, long n) {
+            int node = 0;
+            for (int i = 0; i < length; i++) {
+                int itemRank = items[i];
+                int child = firstChild[node];
+                while (child >= 0 && item[child] != itemRank) {
+                    child = nextSibling[child];
+                }
+                if (child < 0) {
+                    child = newNode(itemRank, node);
+                }
+                count[child] += n;
+                support[itemRank] += n;
+                node = child;
+            }
+        }
+
+        /**
+         * itemを含むかごだけを集め、item より根に近い商品からなる条件付きFP木を作る（頻出の商品がなければnull）
+         */
+        FpTree conditionalTree(int target, long minSupport) {
+            // 1回目: 条件付きパターンベースでの各商品の支持度
+            long[] conditionalSupport = new long[target];
+            int pathNodes = 0;
+            for (int node = head[target]; node >= 0; node = nodeLink[node]) {
+                for (int p = parent[node]; p > 0; p = parent[p]) {
+                    conditionalSupport[item[p]] += count[node];
+                    pathNodes++;
+                }
+            }
+            boolean any = false;
+            for (long s : conditionalSupport) {
+                if (s >= minSupport) {
+                    any = true;
+                    break;
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            // 2回目: 頻出の商品だけを残した経路を入れる（経路は葉から根へ辿るので逆順にする）
+            FpTree tree = new FpTree(target, Math.max(16, pathNodes + 1));
+            int[] path = new int[target];
+            for (int node = head[target]; node >= 0; node = nodeLink[node]) {
+                int length = 0;
+                for (int p = parent[node]; p > 0; p = parent[p]) {
+                    if (conditionalSupport[item[p]] >= minSupport) {
+                        path[length++] = item[p];
+                    }
+                }
+                for (int i = 0, j = length - 1; i < j; i++, j--) {
+                    int swap = path[i];
+                    path[i] = path[j];
+                    path[j] = swap;
+                }
+                if (length > 0) {
+                    tree.insert(path, length, count[node]);
+                }
+            }
+            return tree;
+        }
+    }
+}
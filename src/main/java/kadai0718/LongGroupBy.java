@@ -0,0 +1,190 @@
+package kadai0718;
+
+import java.util.Arrays;
+
+// intキー → long集計値 (合計・件数・最小・最大) のグループ集計表
+// オープンアドレス法のプリミティブ配列だけで構成し、1行ごとの集計でオブジェクトを生成しない。
+// 合計はMath.addExactで加算し、longを超える場合は黙って桁あふれせずに例外を投げる。
+public class LongGroupBy {
+    private static final int EMPTY = Integer.MIN_VALUE; // 空きスロット（キーには使えない）
+
+    private int[] keys;
+    private long[] sums;
+    private long[] counts;
+    private long[] mins;
+    private long[] maxs;
+    private int size;
+
+    public LongGroupBy() {
+        this(16);
+    }
+
+    public LongGroupBy(int expectedGroups) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedGroups * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        sums = new long[capacity];
+        counts = new long[capacity];
+        mins = new long[capacity];
+        maxs = new long[capacity];
+    }
+
+    /**
+     * キーのグループに値を1件加える
+     */
+    public void add(int key, long value) {
+        int slot = slotFor(key);
+        sums[slot] = Math.addExact(sums[slot], value);
+        counts[slot]++;
+        if (value < mins[slot]) {
+            mins[slot] = value;
+        }
+        if (value > maxs[slot]) {
+            maxs[slot] = value;
+        }
+    }
+
+    /**
+     * 別の集計表（並列集計の部分結果など）をこの表にまとめる
+     */
+    public void merge(LongGroupBy other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                int slot = slotFor(other.keys[i]);
+                sums[slot] = Math.addExact(sums[slot], other.sums[i]);
+                counts[slot] += other.counts[i];
+                mins[slot] = Math.min(mins[slot], other.mins[i]);
+                maxs[slot] = Math.max(maxs[slot], other.maxs[i]);
+            }
+        }
+    }
+
+    // キーのスロットを探す（なければ作る）
+    private int slotFor(int key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("このキーは使用できません: " + key);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (true) {
+            int existing = keys[slot];
+            if (existing == key) {
+                return slot;
+            }
+            if (existing == EMPTY) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    return slotFor(key);
+                }
+                keys[slot] = key;
+                mins[slot] = Long.MAX_VALUE;
+                maxs[slot] = Long.MIN_VALUE;
+                size++;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldSums = sums;
+        long[] oldCounts = counts;
+        long[] oldMins = mins;
+        long[] oldMaxs = maxs;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                sums[slot] = oldSums[i];
+                counts[slot] = oldCounts[i];
+                mins[slot] = oldMins[i];
+                maxs[slot] = oldMaxs[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ===== 結果の取得 =====
+
+    public int size() { return size; }
+
+    public boolean contains(int key) { return find(key) >= 0; }
+
+    public long getSum(int key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : sums[slot];
+    }
+
+    public long getCount(int key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    public long getMin(int key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : mins[slot];
+    }
+
+    public long getMax(int key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : maxs[slot];
+    }
+
+    /**
+     * 登録されているキーを昇順で返す
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // グループごとの集計値を受け取るコールバック
+    @FunctionalInterface
+    public interface GroupConsumer {
+        void accept(int key, long sum, long count, long min, long max);
+    }
+
+    /**
+     * 全グループを（順不同で）走査する
+     */
+    public void forEach(GroupConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], sums[i], counts[i], mins[i], maxs[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package kadai0718;
+
+// long型のキーとint型の値（行番号など）の組を、キーの昇順に並べ替える（安定なマージソート）
+// ボクシングせずに配列のまま並べ替えるため、問い合わせエンジンの並べ替えや分位点スケッチの集約で共通に使う
+final class LongKeySort {
+
+    private LongKeySort() {
+    }
+
+    /**
+     * keys[0, n) の昇順に、keysとrowsの先頭n要素を同じ順序で並べ替える（同じキーの間では元の順序を保つ）
+     */
+    static void sort(long[] keys, int[] rows, int n) {
+        long[] keyBuffer = new long[n];
+        int[] rowBuffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int left = 0; left < n; left += 2 * width) {
+                int middle = Math.min(left + width, n);
+                int right = Math.min(left + 2 * width, n);
+                int i = left;
+                int j = middle;
+                int k = left;
+                while (i < middle && j < right) {
+                    if (keys[j] < keys[i]) {
+                        keyBuffer[k] = keys[j];
+                        rowBuffer[k++] = rows[j++];
+                    } else {
+                        keyBuffer[k] = keys[i];
+                        rowBuffer[k++] = rows[i++];
+                    }
+                }
+                while (i < middle) {
+                    keyBuffer[k] = keys[i];
+                    rowBuffer[k++] = rows[i++];
+                }
+                while (j < right) {
+                    keyBuffer[k] = keys[j];
+                    rowBuffer[k++] = rows[j++];
+                }
+            }
+            System.arraycopy(keyBuffer, 0, keys, 0, n);
+            System.arraycopy(rowBuffer, 0, rows, 0, n);
+        }
+    }
+}
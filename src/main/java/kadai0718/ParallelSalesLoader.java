@@ -0,0 +1,290 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// 大きな売上CSVを並列に読み込むローダー
+// ファイルをメモリマップし、改行位置にそろえた範囲に分割して、範囲ごとにForkJoinのワーカーで解析する
+public class ParallelSalesLoader {
+
+    // 不正な行の通知先（行番号はファイル先頭からの絶対行番号）
+    @FunctionalInterface
+    public interface ErrorReporter {
+        void report(long lineNumber, SalesCsvReader.ParseError error, String rawLine);
+
+        /**
+         * 内容を残さずに件数だけ数えた不正な行を通知する（並列読み込みで範囲ごとの保持上限を超えた分）
+         * 既定では件数を1行だけ標準エラーに出力する
+         */
+        default void reportOmitted(SalesCsvReader.ParseError error, long count) {
+            System.err.println("WARN: ほかに" + error.getDescription() + "の行を" + count + "件スキップ（内容は保持していません）");
+        }
+    }
+
+    private static final int BLOCK_SIZE = 1 << 20;          // マップ領域からコピーする単位
+    private static final long MIN_RANGE_SIZE = 1L << 20;     // 1範囲の最小サイズ
+    private static final long MAX_RANGE_SIZE = 256L << 20;   // 1範囲の最大サイズ（1回のmapに収まる大きさ）
+    public static final int DEFAULT_MAX_REJECTED_PER_RANGE = 1000;
+
+    private final ForkJoinPool pool;
+    private int maxRejectedPerRange = DEFAULT_MAX_REJECTED_PER_RANGE;
+
+    public ParallelSalesLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelSalesLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 全行をSaleRecordのリストとして読み込む
+     *
+     * @param file          読み込むCSVファイル（1行目はヘッダー）
+     * @param preserveOrder trueならファイル内の順序を保つ。falseなら解析が終わった範囲から順に連結する
+     * @param errors        不正な行の通知先
+     */
+    public List<SaleRecord> loadRecords(Path file, boolean preserveOrder, ErrorReporter errors) throws IOException {
+        List<RecordBuffer> chunks = loadChunks(file, preserveOrder, RecordBuffer::new, errors);
+        int total = chunks.stream().mapToInt(c -> c.records.size()).sum();
+        List<SaleRecord> records = new ArrayList<>(total);
+        chunks.forEach(c -> records.addAll(c.records));
+        return records;
+    }
+
+    /**
+     * 範囲ごとに新しいハンドラーを作って並列に解析し、ハンドラーのリストを返す
+     * onRowに渡される行番号は範囲の先頭からの相対値。不正な行は全範囲の解析後に絶対行番号でerrorsへ通知する。
+     * 絶対行番号は前の範囲の行数が分かるまで決まらないため、不正な行は範囲ごとに最初のmaxRejectedPerRange件だけ保持し、
+     * 残りはエラーの種類ごとの件数としてreportOmittedで通知する（汚れた巨大ファイルでもメモリが増え続けない）。
+     *
+     * @param preserveOrder trueならファイル内の順序、falseなら解析完了順でハンドラーを返す
+     */
+    public <T extends SaleRowHandler> List<T> loadChunks(Path file, boolean preserveOrder,
+                                                          Supplier<T> handlerFactory, ErrorReporter errors) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = splitRanges(channel);
+            int rangeCount = bounds.length - 1;
+
+            List<RangeTask<T>> tasks = new ArrayList<>(rangeCount);
+            AtomicInteger completion = new AtomicInteger();
+            for (int i = 0; i < rangeCount; i++) {
+                tasks.add(new RangeTask<>(channel, bounds[i], bounds[i + 1], i == 0, handlerFactory.get(), completion,
+                        maxRejectedPerRange));
+            }
+
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        ForkJoinTask.invokeAll(tasks);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // 各範囲の行数の累積から絶対行番号を求めてエラーを通知
+            long linesBefore = 0;
+            long[] omitted = new long[SalesCsvReader.ParseError.values().length];
+            for (RangeTask<T> task : tasks) {
+                for (RejectedRow row : task.rejected) {
+                    errors.report(linesBefore + row.relativeLine, row.error, row.rawLine);
+                }
+                for (int kind = 0; kind < omitted.length; kind++) {
+                    omitted[kind] += task.omitted[kind];
+                }
+                linesBefore += task.lineCount;
+            }
+            for (SalesCsvReader.ParseError error : SalesCsvReader.ParseError.values()) {
+                if (omitted[error.ordinal()] > 0) {
+                    errors.reportOmitted(error, omitted[error.ordinal()]);
+                }
+            }
+
+            if (!preserveOrder) {
+                tasks.sort((a, b) -> Integer.compare(a.completionOrder, b.completionOrder));
+            }
+            List<T> handlers = new ArrayList<>(rangeCount);
+            tasks.forEach(t -> handlers.add(t.handler));
+            return handlers;
+        }
+    }
+
+    /**
+     * 範囲ごとに内容を保持する不正な行の上限（隔離ファイルにすべての行を残したい場合は大きくする）
+     * 保持した行は全範囲の解析が終わるまでメモリに残るため、上限をなくすと汚れた行の量に比例してメモリを使う
+     */
+    public void setMaxRejectedPerRange(int maxRejectedPerRange) {
+        this.maxRejectedPerRange = maxRejectedPerRange;
+    }
+
+    /**
+     * ファイルを改行の直後で区切った範囲の境界列を求める（bounds[i] ～ bounds[i+1] が1範囲）
+     */
+    private long[] splitRanges(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = Math.max(1, pool.getParallelism());
+        long rangeSize = Math.max(MIN_RANGE_SIZE, Math.min(MAX_RANGE_SIZE, size / (parallelism * 4L) + 1));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = 0;
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        while (size - position > rangeSize) {
+            long candidate = position + rangeSize;
+            long boundary = -1;
+            // 候補位置以降で最初の改行を探す
+            while (boundary < 0 && candidate < size) {
+                probe.clear();
+                int n = channel.read(probe, candidate);
+                if (n <= 0) {
+                    break;
+                }
+                int newline = SalesCsvReader.indexOf(probe.array(), 0, n, (byte) '\n');
+                if (newline >= 0) {
+                    boundary = candidate + newline + 1;
+                } else {
+                    candidate += n;
+                }
+            }
+            if (boundary < 0 || boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            position = boundary;
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // 1範囲を解析するタスク（解析器とハンドラーはタスク専用なので同期は不要）
+    @SuppressWarnings("serial") // ForkJoinTaskはSerializableだが、タスクを直列化することはない
+    private static class RangeTask<T extends SaleRowHandler> extends RecursiveAction {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean first;
+        private final T handler;
+        private final AtomicInteger completion;
+        private final int maxRejected;
+        private final List<RejectedRow> rejected = new ArrayList<>();  // 最初のmaxRejected件
+        private final long[] omitted = new long[SalesCsvReader.ParseError.values().length]; // 上限を超えた件数
+        private long lineCount;
+        private int completionOrder;
+
+        RangeTask(FileChannel channel, long start, long end, boolean first, T handler, AtomicInteger completion,
+                  int maxRejected) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.handler = handler;
+            this.completion = completion;
+            this.maxRejected = maxRejected;
+        }
+
+        @Override
+        protected void compute() {
+            SalesCsvReader reader = new SalesCsvReader();
+            reader.reset(0, first ? 1 : 0); // 先頭の範囲だけヘッダー行を読み飛ばす
+            SaleRowHandler collecting = new SaleRowHandler() {
+                @Override
+                public void onRow(long lineNumber, String productName, String category,
+                                  int quantity, int unitPrice, long epochSecond) {
+                    handler.onRow(lineNumber, productName, category, quantity, unitPrice, epochSecond);
+                }
+
+                @Override
+                public void onRow(long lineNumber, String productName, String category,
+                                  int quantity, int unitPrice, long epochSecond, int nanoOfSecond) {
+                    handler.onRow(lineNumber, productName, category, quantity, unitPrice, epochSecond, nanoOfSecond);
+                }
+
+                @Override
+                public void onError(long lineNumber, SalesCsvReader.ParseError error, String rawLine) {
+                    if (rejected.size() < maxRejected) {
+                        rejected.add(new RejectedRow(lineNumber, error, rawLine));
+                    } else {
+                        omitted[error.ordinal()]++;
+                    }
+                }
+            };
+
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                byte[] buf = new byte[(int) Math.min(BLOCK_SIZE, Math.max(1, end - start))];
+                int filled = 0;
+                if (first && mapped.remaining() >= 3 && (mapped.get(0) & 0xFF) == 0xEF
+                        && (mapped.get(1) & 0xFF) == 0xBB && (mapped.get(2) & 0xFF) == 0xBF) {
+                    mapped.position(3); // UTF-8のBOM
+                }
+                while (true) {
+                    int n = Math.min(buf.length - filled, mapped.remaining());
+                    mapped.get(buf, filled, n);
+                    filled += n;
+                    boolean last = !mapped.hasRemaining();
+                    int consumed = reader.parse(buf, 0, filled, last, collecting);
+                    if (last) {
+                        break;
+                    }
+                    filled -= consumed;
+                    System.arraycopy(buf, consumed, buf, 0, filled);
+                    if (filled == buf.length) {
+                        buf = Arrays.copyOf(buf, buf.length * 2); // ブロックより長い行
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lineCount = reader.getLineNumber();
+            completionOrder = completion.getAndIncrement();
+        }
+    }
+
+    // 範囲内の行番号のまま保持しておく不正な行
+    private static class RejectedRow {
+        private final long relativeLine;
+        private final SalesCsvReader.ParseError error;
+        private final String rawLine;
+
+        RejectedRow(long relativeLine, SalesCsvReader.ParseError error, String rawLine) {
+            this.relativeLine = relativeLine;
+            this.error = error;
+            this.rawLine = rawLine;
+        }
+    }
+
+    // 範囲ごとのSaleRecordの格納先
+    private static class RecordBuffer implements SaleRowHandler {
+        private final List<SaleRecord> records = new ArrayList<>();
+
+        @Override
+        public void onRow(long lineNumber, String productName, String category,
+                          int quantity, int unitPrice, long epochSecond) {
+            onRow(lineNumber, productName, category, quantity, unitPrice, epochSecond, 0);
+        }
+
+        @Override
+        public void onRow(long lineNumber, String productName, String category,
+                          int quantity, int unitPrice, long epochSecond, int nanoOfSecond) {
+            records.add(new SaleRecord(productName, category, quantity, unitPrice,
+                    LocalDateTime.ofEpochSecond(epochSecond, nanoOfSecond, ZoneOffset.UTC)));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package kadai0718;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// 商品マスタ（商品名 → ブランド・原価・部門・カテゴリ階層）
+// 売上テーブルと同じく列ごとの配列で持ち、ブランド・部門・大分類・小分類は辞書符号化する。
+// 小分類は大分類の下の階層なので、同じ名前でも大分類が違えば別の分類として「大分類/小分類」の形で登録する。
+// CSV形式: 商品名,ブランド,原価,部門[,大分類,小分類] （1行目はヘッダー。階層の列がなければ「未分類」）
+public class ProductMaster {
+    public static final String UNCLASSIFIED = "未分類";
+
+    private final StringDictionary brands = new StringDictionary();
+    private final StringDictionary departments = new StringDictionary();
+    private final StringDictionary majorCategories = new StringDictionary();
+    private final StringDictionary minorCategories = new StringDictionary(); // 「大分類/小分類」
+    private String[] productNames = new String[64];
+    private int[] brandIds = new int[64];
+    private int[] unitCosts = new int[64];
+    private int[] departmentIds = new int[64];
+    private int[] majorCategoryIds = new int[64];
+    private int[] minorCategoryIds = new int[64];
+    private int size;
+
+    /**
+     * 商品マスタのCSVを読み込む（形式が不正な行は警告を出して読み飛ばす）
+     */
+    public static ProductMaster load(Path file) throws IOException {
+        ProductMaster master = new ProductMaster();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine(); // ヘッダー行
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length != 4 && parts.length != 6) {
+                    System.err.println("WARN: 商品マスタの" + lineNumber + "行目をスキップ (列数が不正): " + line);
+                    continue;
+                }
+                try {
+                    int unitCost = Integer.parseInt(parts[2].trim());
+                    if (parts.length == 6) {
+                        master.add(parts[0], parts[1], unitCost, parts[3], parts[4], parts[5]);
+                    } else {
+                        master.add(parts[0], parts[1], unitCost, parts[3]);
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("WARN: 商品マスタの" + lineNumber + "行目をスキップ (原価が数値ではありません): " + line);
+                }
+            }
+        }
+        return master;
+    }
+
+    public void add(String productName, String brand, int unitCost, String department) {
+        add(productName, brand, unitCost, department, UNCLASSIFIED, UNCLASSIFIED);
+    }
+
+    public void add(String productName, String brand, int unitCost, String department,
+                    String majorCategory, String minorCategory) {
+        if (size == productNames.length) {
+            int capacity = size * 2;
+            productNames = Arrays.copyOf(productNames, capacity);
+            brandIds = Arrays.copyOf(brandIds, capacity);
+            unitCosts = Arrays.copyOf(unitCosts, capacity);
+            departmentIds = Arrays.copyOf(departmentIds, capacity);
+            majorCategoryIds = Arrays.copyOf(majorCategoryIds, capacity);
+            minorCategoryIds = Arrays.copyOf(minorCategoryIds, capacity);
+        }
+        productNames[size] = productName;
+        brandIds[size] = brands.intern(brand);
+        unitCosts[size] = unitCost;
+        departmentIds[size] = departments.intern(department);
+        majorCategoryIds[size] = majorCategories.intern(majorCategory);
+        minorCategoryIds[size] = minorCategories.intern(majorCategory + "/" + minorCategory);
+        size++;
+    }
+
+    public int size() { return size; }
+    public String getProductName(int row) { return productNames[row]; }
+    public int getUnitCost(int row) { return unitCosts[row]; }
+    public String getBrand(int row) { return brands.valueOf(brandIds[row]); }
+    public String getDepartment(int row) { return departments.valueOf(departmentIds[row]); }
+    public String getMajorCategory(int row) { return majorCategories.valueOf(majorCategoryIds[row]); }
+    // 大分類を含む「大分類/小分類」
+    public String getMinorCategory(int row) { return minorCategories.valueOf(minorCategoryIds[row]); }
+    public StringDictionary getBrands() { return brands; }
+    public StringDictionary getDepartments() { return departments; }
+    public StringDictionary getMajorCategories() { return majorCategories; }
+    public StringDictionary getMinorCategories() { return minorCategories; }
+
+    // 結合処理から列を直接参照するための内部アクセサ
+    int[] brandIdColumn() { return brandIds; }
+    int[] unitCostColumn() { return unitCosts; }
+    int[] departmentIdColumn() { return departmentIds; }
+    int[] majorCategoryIdColumn() { return majorCategoryIds; }
+    int[] minorCategoryIdColumn() { return minorCategoryIds; }
+}
@@ -0,0 +1,291 @@
+package kadai0718;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// 売上テーブルと商品マスタのハッシュ結合
+// 小さい側（商品マスタ）を、売上テーブルの商品辞書IDをキーとするプリミティブのハッシュ表にする。
+// 商品名の文字列を引くのは構築時にマスタ1行につき1回だけで、売上の各行はintのIDで表を引く（文字列のハッシュもボクシングもしない）。
+// ハッシュ表はキーのハッシュ値で分割し、分割ごとに並列に作る。結合した行はそのまま配列の集計に流す。
+public class ProductMasterJoin {
+    private static final int EMPTY = -1;    // 空きスロット（辞書IDは0以上）
+
+    // 集計の軸
+    public enum GroupKey {
+        BRAND,
+        DEPARTMENT,
+        MAJOR_CATEGORY,  // カテゴリ階層の大分類
+        MINOR_CATEGORY,  // カテゴリ階層の小分類（「大分類/小分類」）
+        PRODUCT
+    }
+
+    private final SalesTable sales;
+    private final ProductMaster master;
+    private final int partitionBits;
+    private final Partition[] partitions;
+    private int duplicateKeys;   // マスタ内で同じ商品が重複していた数（先の行を使う）
+    private int unusedMasterRows; // 売上に出現しない商品の行数（表に入れない）
+
+    private ProductMasterJoin(SalesTable sales, ProductMaster master, int partitionBits) {
+        this.sales = sales;
+        this.master = master;
+        this.partitionBits = partitionBits;
+        this.partitions = new Partition[1 << partitionBits];
+    }
+
+    /**
+     * 商品マスタからハッシュ表を作る（並列度に応じて分割する）
+     */
+    public static ProductMasterJoin build(SalesTable sales, ProductMaster master) {
+        return build(sales, master, ForkJoinPool.commonPool());
+    }
+
+    public static ProductMasterJoin build(SalesTable sales, ProductMaster master, ForkJoinPool pool) {
+        int partitionBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, pool.getParallelism() * 2 - 1));
+        ProductMasterJoin join = new ProductMasterJoin(sales, master, partitionBits);
+        join.buildPartitions(pool);
+        return join;
+    }
+
+    private void buildPartitions(ForkJoinPool pool) {
+        // マスタの商品名を売上テーブルの辞書IDに変換し、ハッシュ値で分割先を決める
+        int[] keys = new int[master.size()];
+        int[] counts = new int[partitions.length];
+        for (int row = 0; row < master.size(); row++) {
+            keys[row] = sales.getProducts().idOf(master.getProductName(row));
+            if (keys[row] == EMPTY) {
+                unusedMasterRows++;
+                continue;
+            }
+            counts[partitionOf(keys[row])]++;
+        }
+        int[][] rowsByPartition = new int[partitions.length][];
+        for (int p = 0; p < partitions.length; p++) {
+            rowsByPartition[p] = new int[counts[p]];
+        }
+        int[] filled = new int[partitions.length];
+        for (int row = 0; row < master.size(); row++) {
+            if (keys[row] != EMPTY) {
+                int p = partitionOf(keys[row]);
+                rowsByPartition[p][filled[p]++] = row;
+            }
+        }
+
+        // 分割ごとに独立した表を並列に作る
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int p = 0; p < partitions.length; p++) {
+            int partition = p;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    partitions[partition] = new Partition(keys, rowsByPartition[partition]);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        for (Partition partition : partitions) {
+            duplicateKeys += partition.duplicates;
+        }
+    }
+
+    private int partitionOf(int key) {
+        return partitionBits == 0 ? 0 : mix(key) >>> (32 - partitionBits);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 売上テーブルの商品IDに対応するマスタの行番号（なければ-1）
+     */
+    public int probe(int productId) {
+        return partitions[partitionOf(productId)].get(productId);
+    }
+
+    // 結合できた行を受け取るコールバック
+    @FunctionalInterface
+    public interface MatchConsumer {
+        void accept(int salesRow, int masterRow);
+    }
+
+    /**
+     * 売上の全行について表を引き、マスタに存在する行だけを渡す
+     *
+     * @return マスタに存在しなかった行数
+     */
+    public long forEachMatch(MatchConsumer consumer) {
+        int[] productIds = sales.productIdColumn();
+        long unmatched = 0;
+        for (int row = 0; row < sales.size(); row++) {
+            int masterRow = probe(productIds[row]);
+            if (masterRow < 0) {
+                unmatched++;
+            } else {
+                consumer.accept(row, masterRow);
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * 結合した行をグループごとに集計する（売上個数・売上金額・原価。粗利は売上金額−原価）
+     * グループの辞書IDを添字にした配列に直接加算する
+     */
+    public Summary summarize(GroupKey groupKey) {
+        int[] productIds = sales.productIdColumn();
+        int[] quantities = sales.quantityColumn();
+        int[] unitPrices = sales.unitPriceColumn();
+        int[] unitCosts = master.unitCostColumn();
+        int[] groupOfMasterRow = switch (groupKey) {
+            case BRAND -> master.brandIdColumn();
+            case DEPARTMENT -> master.departmentIdColumn();
+            case MAJOR_CATEGORY -> master.majorCategoryIdColumn();
+            case MINOR_CATEGORY -> master.minorCategoryIdColumn();
+            case PRODUCT -> null;
+        };
+        int groups = switch (groupKey) {
+            case BRAND -> master.getBrands().size();
+            case DEPARTMENT -> master.getDepartments().size();
+            case MAJOR_CATEGORY -> master.getMajorCategories().size();
+            case MINOR_CATEGORY -> master.getMinorCategories().size();
+            case PRODUCT -> sales.getProducts().size();
+        };
+        long[] quantityTotals = new long[groups];
+        long[] revenueTotals = new long[groups];
+        long[] costTotals = new long[groups];
+        long unmatched = 0;
+        for (int row = 0; row < sales.size(); row++) {
+            int productId = productIds[row];
+            int masterRow = probe(productId);
+            if (masterRow < 0) {
+                unmatched++;
+                continue;
+            }
+            int group = groupOfMasterRow == null ? productId : groupOfMasterRow[masterRow];
+            int quantity = quantities[row];
+            quantityTotals[group] += quantity;
+            revenueTotals[group] = Math.addExact(revenueTotals[group], (long) quantity * unitPrices[row]);
+            costTotals[group] = Math.addExact(costTotals[group], (long) quantity * unitCosts[masterRow]);
+        }
+
+        List<GroupTotals> totals = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            if (quantityTotals[group] == 0 && revenueTotals[group] == 0) {
+                continue;
+            }
+            String name = switch (groupKey) {
+                case BRAND -> master.getBrands().valueOf(group);
+                case DEPARTMENT -> master.getDepartments().valueOf(group);
+                case MAJOR_CATEGORY -> master.getMajorCategories().valueOf(group);
+                case MINOR_CATEGORY -> master.getMinorCategories().valueOf(group);
+                case PRODUCT -> sales.getProducts().valueOf(group);
+            };
+            totals.add(new GroupTotals(name, quantityTotals[group], revenueTotals[group], costTotals[group]));
+        }
+        return new Summary(totals, unmatched);
+    }
+
+    public int getDuplicateKeys() { return duplicateKeys; }
+    public int getUnusedMasterRows() { return unusedMasterRows; }
+
+    // 1つの分割のハッシュ表（オープンアドレス法、キーは辞書ID、値はマスタの行番号）
+    private static class Partition {
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+        int duplicates;
+
+        Partition(int[] keyOfRow, int[] rows) {
+            int capacity = Integer.highestOneBit(Math.max(4, rows.length * 2 - 1)) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, EMPTY);
+            for (int row : rows) {
+                int key = keyOfRow[row];
+                int slot = mix(key) & mask;
+                while (keys[slot] != EMPTY && keys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == key) {
+                    duplicates++;
+                    continue;
+                }
+                keys[slot] = key;
+                values[slot] = row;
+            }
+        }
+
+        int get(int key) {
+            int slot = mix(key) & mask;
+            while (true) {
+                int existing = keys[slot];
+                if (existing == key) {
+                    return values[slot];
+                }
+                if (existing == EMPTY) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+
+    // グループごとの集計値
+    public static class GroupTotals {
+        private final String name;
+        private final long quantity;
+        private final long revenue;
+        private final long cost;
+
+        GroupTotals(String name, long quantity, long revenue, long cost) {
+            this.name = name;
+            this.quantity = quantity;
+            this.revenue = revenue;
+            this.cost = cost;
+        }
+
+        public String getName() { return name; }
+        public long getQuantity() { return quantity; }
+        public long getRevenue() { return revenue; }
+        public long getCost() { return cost; }
+        public long getProfit() { return revenue - cost; }
+
+        @Override
+        public String toString() {
+            return name + ": 売上 " + revenue + "円, 原価 " + cost + "円, 粗利 " + getProfit() + "円 (" + quantity + "個)";
+        }
+    }
+
+    // 集計結果と、マスタに存在しなかった売上の行数
+    public static class Summary {
+        private final List<GroupTotals> groups;
+        private final long unmatchedRows;
+
+        Summary(List<GroupTotals> groups, long unmatchedRows) {
+            this.groups = groups;
+            this.unmatchedRows = unmatchedRows;
+        }
+
+        public List<GroupTotals> getGroups() { return groups; }
+        public long getUnmatchedRows() { return unmatchedRows; }
+
+        public void print() {
+            groups.forEach(System.out::println);
+            if (unmatchedRows > 0) {
+                System.out.println("(商品マスタにない売上 " + unmatchedRows + "件は集計から除外)");
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package kadai0718;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// long値の分位点を固定メモリで近似するスケッチ（KLL方式）
+// 値を段（レベル）ごとの配列に溜め、段があふれたら並べ替えて1つおきに上の段へ送る。
+// 段hの値は2^h件分の重みを持つ。上の段ほど容量を小さくするので、保持する値の数は件数によらず
+// おおよそ 3k 件に収まり、順位の誤差は全体のおよそ 1.7/k 程度になる（k=200なら約1%）。
+// 別のスケッチ（並列処理の部分結果や別の日の結果）とmergeで統合できる。最小値・最大値は正確に保持する。
+public class QuantileSketch {
+    public static final int DEFAULT_K = 200;
+    private static final int MIN_CAPACITY = 8;
+    private static final double CAPACITY_RATIO = 2.0 / 3.0; // 1段下がるごとの容量の比
+
+    private final int k;
+    private long[][] levels = new long[1][];
+    private int[] sizes = new int[1];
+    private int levelCount = 1;
+    private int[] capacities = new int[1];   // 段ごとの容量（段が増えるたびに計算し直す）
+    private int totalCapacity;
+    private int retained;                    // 保持している値の数
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private final SplittableRandom random;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k 精度の指定（大きいほど正確で、保持する値も増える）
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("kは" + MIN_CAPACITY + "以上を指定してください: " + k);
+        }
+        this.k = k;
+        this.random = new SplittableRandom(k); // 同じ入力からは同じ結果になるよう固定のシードを使う
+        updateCapacities();
+        levels[0] = new long[capacities[0]];
+    }
+
+    /**
+     * 値を1件加える
+     */
+    public void add(long value) {
+        if (sizes[0] == levels[0].length) {
+            levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+        }
+        levels[0][sizes[0]++] = value;
+        retained++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (retained > totalCapacity) {
+            compress();
+        }
+    }
+
+    /**
+     * 別のスケッチの内容をこのスケッチにまとめる（otherは変更しない）
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        while (levelCount < other.levelCount) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levelCount; h++) {
+            append(h, other.levels[h], other.sizes[h]);
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    // 容量を超えた段を下から順に圧縮する
+    private void compress() {
+        while (retained > totalCapacity) {
+            for (int h = 0; h < levelCount; h++) {
+                if (sizes[h] >= capacities[h]) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    // 段hを並べ替え、1つおき（開始位置は乱数）の値を段h+1へ送る。件数が奇数なら最大の1件は残す
+    private void compact(int h) {
+        if (h + 1 == levelCount) {
+            addLevel();
+        }
+        long[] level = levels[h];
+        int size = sizes[h];
+        Arrays.sort(level, 0, size);
+        int kept = size % 2;
+        int pairs = size - kept;
+        int offset = random.nextInt(2);
+        long[] promoted = new long[pairs / 2];
+        for (int i = 0; i < promoted.length; i++) {
+            promoted[i] = level[2 * i + offset];
+        }
+        append(h + 1, promoted, promoted.length);
+        if (kept == 1) {
+            level[0] = level[size - 1];
+        }
+        sizes[h] = kept;
+        retained -= pairs;
+    }
+
+    private void append(int h, long[] values, int length) {
+        if (sizes[h] + length > levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(sizes[h] + length, levels[h].length * 2));
+        }
+        System.arraycopy(values, 0, levels[h], sizes[h], length);
+        sizes[h] += length;
+        retained += length;
+    }
+
+    private void addLevel() {
+        if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levelCount * 2);
+            sizes = Arrays.copyOf(sizes, levelCount * 2);
+        }
+        levels[levelCount] = new long[MIN_CAPACITY];
+        sizes[levelCount] = 0;
+        levelCount++;
+        updateCapacities();
+    }
+
+    // 段hの容量。最上段がk、1段下がるごとに2/3倍（最小MIN_CAPACITY）
+    private void updateCapacities() {
+        capacities = new int[levelCount];
+        totalCapacity = 0;
+        for (int h = 0; h < levelCount; h++) {
+            int depth = levelCount - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    // ===== 問い合わせ =====
+
+    /**
+     * q分位点（0.5で中央値、0.95で95パーセンタイル）の近似値
+     * 値の小さい方から数えた重みの累計が q×件数 に達する最初の値を返す
+     */
+    public long quantile(double q) {
+        return quantiles(q)[0];
+    }
+
+    /**
+     * 複数の分位点をまとめて求める（並べ替えは1回だけ）
+     */
+    public long[] quantiles(double... qs) {
+        if (count == 0) {
+            throw new IllegalStateException("値が1件もありません");
+        }
+        long[] values = new long[retained];
+        int[] levelOf = new int[retained];
+        int n = 0;
+        for (int h = 0; h < levelCount; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                levelOf[n++] = h;
+            }
+        }
+        LongKeySort.sort(values, levelOf, n);
+
+        long[] result = new long[qs.length];
+        for (int j = 0; j < qs.length; j++) {
+            double q = qs[j];
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException("分位は0以上1以下を指定してください: " + q);
+            }
+            if (q == 0) {
+                result[j] = min;
+                continue;
+            }
+            if (q == 1) {
+                result[j] = max;
+                continue;
+            }
+            // 保持している値の重みの合計は件数と一致する（圧縮しても重みの合計は変わらない）
+            double target = q * count;
+            long cumulative = 0;
+            long answer = max;
+            for (int i = 0; i < n; i++) {
+                cumulative += 1L << levelOf[i];
+                if (cumulative >= target) {
+                    answer = values[i];
+                    break;
+                }
+            }
+            result[j] = Math.max(min, Math.min(max, answer));
+        }
+        return result;
+    }
+
+    public long getCount() { return count; }
+    public long getMin() { return min; }
+    public long getMax() { return max; }
+    public int getK() { return k; }
+
+    // 保持している値の数（メモリ使用量の目安）
+    public int retainedItems() { return retained; }
+
+    // ===== 保存・復元（日ごとのスケッチをファイルに残して後で統合する場合など） =====
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeLong(count);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeInt(levelCount);
+        for (int h = 0; h < levelCount; h++) {
+            out.writeInt(sizes[h]);
+            for (int i = 0; i < sizes[h]; i++) {
+                out.writeLong(levels[h][i]);
+            }
+        }
+    }
+
+    public static QuantileSketch readFrom(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readInt());
+        sketch.count = in.readLong();
+        sketch.min = in.readLong();
+        sketch.max = in.readLong();
+        int levelCount = in.readInt();
+        while (sketch.levelCount < levelCount) {
+            sketch.addLevel();
+        }
+        for (int h = 0; h < levelCount; h++) {
+            int size = in.readInt();
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = in.readLong();
+            }
+            sketch.append(h, values, size);
+        }
+        return sketch;
+    }
+}
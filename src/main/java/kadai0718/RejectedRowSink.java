@@ -0,0 +1,173 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 不正な行の受け取り先
+// 1行ごとに標準エラーへ出力する代わりに、エラーの種類ごとに件数を数え、最初のN件だけを見本として残す。
+// 隔離ファイルを指定した場合は、reportで受け取った不正な行をすべて「行番号<TAB>エラーの種類<TAB>元の行」の形式で書き出す。
+// reportOmittedで件数だけ通知された行（並列読み込みで範囲ごとの保持上限を超えた分）は内容がないため書き出せない。
+// 隔離ファイルにすべての行を残すには、読み込み側で保持上限をなくす（getMaxRejectedPerRangeを使う）。
+// 書き出しはバッファにためて、いっぱいになったときとcloseのときにまとめてFileChannelへ書く。
+// 汚れたデータでも不正な行1件あたりの処理は配列への加算とバッファへのコピーだけで済み、読み込みの速度を落とさない。
+public class RejectedRowSink implements ParallelSalesLoader.ErrorReporter, AutoCloseable {
+    public static final int DEFAULT_SAMPLES = 5;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int samplesPerError;
+    private final long[] counts = new long[SalesCsvReader.ParseError.values().length];
+    private long omitted;   // 内容を受け取らずに件数だけ数えた行（隔離ファイルにも書かれていない）
+    private final List<List<String>> samples = new ArrayList<>();
+    private FileChannel quarantine;
+    private ByteBuffer buffer;
+
+    public RejectedRowSink() {
+        this(DEFAULT_SAMPLES);
+    }
+
+    /**
+     * @param samplesPerError エラーの種類ごとに残す見本の件数
+     */
+    public RejectedRowSink(int samplesPerError) {
+        this.samplesPerError = samplesPerError;
+        for (int i = 0; i < counts.length; i++) {
+            samples.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * 不正な行をすべて書き出す隔離ファイルを指定する（既存のファイルは上書きする）
+     */
+    public synchronized void setQuarantineFile(Path file) throws IOException {
+        closeQuarantine();
+        quarantine = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * 並列読み込みで範囲ごとに内容を保持させる不正な行の上限
+     * 隔離ファイルがあれば上限をなくしてすべての行を書き出せるようにし、なければ既定の上限で件数だけ数える
+     */
+    public synchronized int getMaxRejectedPerRange() {
+        return quarantine != null ? Integer.MAX_VALUE : ParallelSalesLoader.DEFAULT_MAX_REJECTED_PER_RANGE;
+    }
+
+    // 並列の読み込みから呼ばれてもよいよう同期する（呼ばれるのは不正な行だけなので競合はほとんどない）
+    @Override
+    public synchronized void report(long lineNumber, SalesCsvReader.ParseError error, String rawLine) {
+        int kind = error.ordinal();
+        counts[kind]++;
+        if (samples.get(kind).size() < samplesPerError) {
+            samples.get(kind).add(lineNumber + "行目: " + rawLine);
+        }
+        if (quarantine != null) {
+            try {
+                writeQuarantine(lineNumber, error, rawLine);
+            } catch (IOException e) {
+                throw new UncheckedIOException("隔離ファイルに書き込めません", e);
+            }
+        }
+    }
+
+    // 並列読み込みで範囲ごとの保持上限を超えた行は件数だけ数える
+    @Override
+    public synchronized void reportOmitted(SalesCsvReader.ParseError error, long count) {
+        counts[error.ordinal()] += count;
+        omitted += count;
+    }
+
+    private void writeQuarantine(long lineNumber, SalesCsvReader.ParseError error, String rawLine) throws IOException {
+        byte[] line = (lineNumber + "\t" + error.name() + "\t" + rawLine + "\n").getBytes(StandardCharsets.UTF_8);
+        if (line.length > buffer.remaining()) {
+            flush();
+        }
+        if (line.length > buffer.capacity()) {
+            writeFully(ByteBuffer.wrap(line)); // バッファより長い行は直接書く
+        } else {
+            buffer.put(line);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            quarantine.write(source);
+        }
+    }
+
+    /**
+     * 隔離ファイルに残りを書き出して閉じる
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeQuarantine();
+    }
+
+    private void closeQuarantine() throws IOException {
+        if (quarantine != null) {
+            try {
+                flush();
+            } finally {
+                quarantine.close();
+                quarantine = null;
+                buffer = null;
+            }
+        }
+    }
+
+    public synchronized long getCount(SalesCsvReader.ParseError error) { return counts[error.ordinal()]; }
+
+    public synchronized long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    // エラーの種類ごとの見本（最初のN件）
+    public synchronized List<String> getSamples(SalesCsvReader.ParseError error) {
+        return Collections.unmodifiableList(new ArrayList<>(samples.get(error.ordinal())));
+    }
+
+    /**
+     * 件数と見本を標準エラーに出力する（不正な行がなければ何も出さない）
+     */
+    public synchronized void printSummary() {
+        long total = getTotalCount();
+        if (total == 0) {
+            return;
+        }
+        System.err.println("WARN: 不正な行 " + total + "件をスキップしました");
+        if (omitted > 0) {
+            System.err.println("  (うち" + omitted + "件は並列読み込みの保持上限を超えたため内容を記録していません)");
+        }
+        for (SalesCsvReader.ParseError error : SalesCsvReader.ParseError.values()) {
+            long count = counts[error.ordinal()];
+            if (count == 0) {
+                continue;
+            }
+            System.err.println("  " + error.getDescription() + ": " + count + "件");
+            for (String sample : samples.get(error.ordinal())) {
+                System.err.println("    " + sample);
+            }
+            if (count > samples.get(error.ordinal()).size()) {
+                System.err.println("    ... 他 " + (count - samples.get(error.ordinal()).size()) + "件");
+            }
+        }
+    }
+}
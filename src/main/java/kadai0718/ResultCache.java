@@ -0,0 +1,304 @@
+package kadai0718;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 集計結果のディスクキャッシュ
+// キーは「入力ファイルのパス」と「問い合わせの署名（集計の種類と引数を正規化した文字列）」。
+// 結果ファイルには入力ファイルの指紋（サイズ・更新日時、指定すれば内容のSHA-256）を一緒に保存し、
+// 取り出すときに指紋が今のファイルと違えば、そのエントリを捨てて計算し直す。
+// 合計サイズが上限を超えたら、最後に使われた日時が古いものから消す（LRU）。使った日時は結果ファイルの更新日時として
+// 残すので、プロセスを起動し直しても順序は引き継がれる。
+// 同じディレクトリを複数のプロセスで同時に使う場合も、書き込みは一時ファイルからの置き換えなので壊れたファイルは読まない。
+public class ResultCache {
+    private static final int MAGIC = 0x52434348; // "RCCH"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".result";
+
+    private final Path directory;
+    private final long maxBytes;
+    private boolean contentHash;
+    // 結果ファイル名 → サイズ（アクセス順。先頭が最も古い）
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    // 結果をバイト列にする方法
+    public interface Codec<T> {
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    // キャッシュにない場合に結果を計算する処理
+    @FunctionalInterface
+    public interface Loader<T> {
+        T compute() throws IOException;
+    }
+
+    // 名前 → 合計値（順序を保つ）
+    public static final Codec<Map<String, Long>> TOTALS = new Codec<>() {
+        @Override
+        public void write(Map<String, Long> value, DataOutput out) throws IOException {
+            out.writeInt(value.size());
+            for (Map.Entry<String, Long> entry : value.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+
+        @Override
+        public Map<String, Long> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            Map<String, Long> value = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                value.put(in.readUTF(), in.readLong());
+            }
+            return value;
+        }
+    };
+
+    /**
+     * @param directory 結果ファイルを置くディレクトリ（なければ作る）
+     * @param maxBytes  結果ファイルの合計サイズの上限
+     */
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        // 既存の結果ファイルを、最後に使われた日時の古い順に登録する
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        List<StoredFile> found = new ArrayList<>();
+        for (Path file : files) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            found.add(new StoredFile(file.getFileName().toString(), attributes.size(), attributes.lastModifiedTime()));
+        }
+        found.sort(Comparator.comparing(stored -> stored.lastUsed));
+        for (StoredFile stored : found) {
+            entries.put(stored.name, stored.size);
+            totalBytes += stored.size;
+        }
+        evict();
+    }
+
+    // 起動時に見つけた結果ファイル（最後に使われた日時の順に並べるため）
+    private static class StoredFile {
+        private final String name;
+        private final long size;
+        private final FileTime lastUsed;
+
+        StoredFile(String name, long size, FileTime lastUsed) {
+            this.name = name;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * 問い合わせの署名を作る（集計の名前と、長さつきの引数を連結する）
+     * 例: signature("revenueBy", "DAY") → "revenueBy(3:DAY)"
+     */
+    public static String signature(String name, Object... arguments) {
+        StringBuilder builder = new StringBuilder(name).append('(');
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            // 引数に区切り文字が含まれていても別の署名と衝突しないよう、長さを前に付ける
+            String text = String.valueOf(arguments[i]);
+            builder.append(text.length()).append(':').append(text);
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * キャッシュにあり入力ファイルが変わっていなければ保存済みの結果を返し、
+     * そうでなければloaderで計算して保存してから返す
+     */
+    public synchronized <T> T get(Path input, String signature, Codec<T> codec, Loader<T> loader) throws IOException {
+        String key = input.toAbsolutePath().normalize() + "\n" + signature;
+        String fileName = fileNameOf(key);
+        Path file = directory.resolve(fileName);
+        byte[] fingerprint = fingerprint(input);
+
+        if (entries.containsKey(fileName)) {
+            T cached = readEntry(file, key, fingerprint, codec);
+            if (cached != null) {
+                hits++;
+                entries.get(fileName); // アクセス順を更新する
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return cached;
+            }
+            invalidations++;
+            remove(fileName);
+        }
+        misses++;
+        T value = loader.compute();
+        writeEntry(file, fileName, key, fingerprint, codec, value);
+        return value;
+    }
+
+    // 保存済みの結果を読む。キーや指紋が一致しない場合、ファイルが壊れている場合はnull
+    private <T> T readEntry(Path file, String key, byte[] fingerprint, Codec<T> codec) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+                return null;
+            }
+            byte[] stored = new byte[in.readInt()];
+            in.readFully(stored);
+            if (!MessageDigest.isEqual(stored, fingerprint)) {
+                return null;
+            }
+            return codec.read(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private <T> void writeEntry(Path file, String fileName, String key, byte[] fingerprint, Codec<T> codec, T value)
+            throws IOException {
+        Path temporary = Files.createTempFile(directory, "tmp", ".part");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeInt(fingerprint.length);
+                out.write(fingerprint);
+                codec.write(value, out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        long size = Files.size(file);
+        entries.put(fileName, size);
+        totalBytes += size;
+        evict();
+    }
+
+    // 合計サイズが上限以下になるまで古いものから消す
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Long>> oldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            oldest.remove();
+            totalBytes -= entry.getValue();
+            Files.deleteIfExists(directory.resolve(entry.getKey()));
+        }
+    }
+
+    private void remove(String fileName) throws IOException {
+        Long size = entries.remove(fileName);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        Files.deleteIfExists(directory.resolve(fileName));
+    }
+
+    /**
+     * 入力ファイルの指紋（サイズと更新日時。setContentHash(true)なら内容のSHA-256も含める）
+     */
+    byte[] fingerprint(Path input) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        ByteBuffer buffer = ByteBuffer.allocate(16 + (contentHash ? 32 : 0));
+        buffer.putLong(attributes.size());
+        buffer.putLong(attributes.lastModifiedTime().toMillis());
+        if (contentHash) {
+            buffer.put(contentDigest(input));
+        }
+        return buffer.array();
+    }
+
+    private static byte[] contentDigest(Path input) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static String fileNameOf(String key) {
+        byte[] hash = sha256().digest(key.getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256が使えません", e); // すべてのJava実装で必須のため起こらない
+        }
+    }
+
+    /**
+     * 入力ファイルに関するエントリをすべて消す（ファイル名からは入力が分からないので中身を確認する）
+     */
+    public synchronized void invalidate(Path input) throws IOException {
+        String prefix = input.toAbsolutePath().normalize() + "\n";
+        for (String fileName : new ArrayList<>(entries.keySet())) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(fileName))))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readUTF().startsWith(prefix)) {
+                    remove(fileName);
+                }
+            } catch (IOException e) {
+                remove(fileName); // 読めないファイルは消しておく
+            }
+        }
+    }
+
+    public synchronized void clear() throws IOException {
+        for (String fileName : new ArrayList<>(entries.keySet())) {
+            remove(fileName);
+        }
+    }
+
+    // 指紋にファイル内容のハッシュを含めるか（更新日時を保ったまま書き換えられる場合向け。毎回ファイル全体を読む）
+    public void setContentHash(boolean contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getTotalBytes() { return totalBytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    // 入力ファイルが変わっていたため捨てたエントリの数
+    public synchronized long getInvalidations() { return invalidations; }
+}
@@ -0,0 +1,298 @@
+package kadai0718;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// カテゴリ × 商品 × 日 の事前集計キューブ
+// 売上金額と件数を3つの粒度（カテゴリ・商品の組×日、カテゴリ×日、日）で配列に保持し、
+// 同じ集計を何度聞かれても元データを再走査せずに答える。新しい売上は add で差分更新できる。
+// スレッドセーフではないため、更新と参照を別スレッドで行う場合は呼び出し側で同期すること。
+public class RollupCube {
+    private final StringDictionary categories = new StringDictionary();
+    private final StringDictionary products = new StringDictionary();
+
+    // (カテゴリ, 商品) の組。商品は通常1つのカテゴリに属するので、組の数は商品数とほぼ同じ
+    private final Map<Long, Integer> pairIds = new HashMap<>();
+    private int[] pairCategory = new int[64];
+    private int[] pairProduct = new int[64];
+    private int pairCount;
+    private int[][] pairsByProduct = new int[64][];
+
+    // 日の軸: データのある日だけに枠（slot）を割り当てる。日付順の参照はdaySlotsで行い、
+    // 外れ値の日付が1件あっても間の日の行は作らない（メモリはデータのある日数に比例）
+    private final TreeMap<Long, Integer> daySlots = new TreeMap<>(); // 1970-01-01からの日数 → 枠番号
+    private int slotCount;
+    private long lastEpochDay = Long.MIN_VALUE; // 直前に引いた日（時刻順の入力では木の検索をほぼ省ける）
+    private int lastSlot = -1;
+    private long[][] pairSums = new long[0][];
+    private long[][] pairCounts = new long[0][];
+    private long[][] categorySums = new long[0][];
+    private long[][] categoryCounts = new long[0][];
+    private long[] daySums = new long[0];
+    private long[] dayCounts = new long[0];
+
+    /**
+     * 列指向テーブルの全行からキューブを作る
+     */
+    public static RollupCube build(SalesTable table) {
+        RollupCube cube = new RollupCube();
+        cube.addAll(table);
+        return cube;
+    }
+
+    /**
+     * テーブルの全行をキューブに加える（テーブルの辞書IDはキューブのIDに変換する）
+     */
+    public void addAll(SalesTable table) {
+        int[] categoryMap = new int[table.getCategories().size()];
+        for (int id = 0; id < categoryMap.length; id++) {
+            categoryMap[id] = categories.intern(table.getCategories().valueOf(id));
+        }
+        int[] productMap = new int[table.getProducts().size()];
+        for (int id = 0; id < productMap.length; id++) {
+            productMap[id] = products.intern(table.getProducts().valueOf(id));
+        }
+        // 商品ごとに直前に使った組を覚えておき、組の検索（ボクシングあり）を最初の1回だけにする
+        int[] lastPair = new int[productMap.length];
+        Arrays.fill(lastPair, -1);
+
+        int[] productIds = table.productIdColumn();
+        int[] categoryIds = table.categoryIdColumn();
+        int[] quantities = table.quantityColumn();
+        int[] unitPrices = table.unitPriceColumn();
+        long[] seconds = table.epochSecondColumn();
+        for (int row = 0; row < table.size(); row++) {
+            int category = categoryMap[categoryIds[row]];
+            int pair = lastPair[productIds[row]];
+            if (pair < 0 || pairCategory[pair] != category) {
+                pair = pairId(category, productMap[productIds[row]]);
+                lastPair[productIds[row]] = pair;
+            }
+            addEncoded(pair, Math.floorDiv(seconds[row], 86400L), (long) quantities[row] * unitPrices[row]);
+        }
+    }
+
+    /**
+     * 売上1件を加える（差分更新）
+     */
+    public void add(String category, String product, long epochSecond, long amount) {
+        int pair = pairId(categories.intern(category), products.intern(product));
+        addEncoded(pair, Math.floorDiv(epochSecond, 86400L), amount);
+    }
+
+    public void add(SaleRecord record) {
+        add(record.getCategory(), record.getProductName(), record.getSaleDateTime().toEpochSecond(ZoneOffset.UTC),
+                (long) record.getQuantity() * record.getUnitPrice());
+    }
+
+    private void addEncoded(int pair, long epochDay, long amount) {
+        int day = daySlot(epochDay);
+        int category = pairCategory[pair];
+
+        long[] pairRow = pairSums[day] = ensureRow(pairSums[day], pair);
+        long[] pairCountRow = pairCounts[day] = ensureRow(pairCounts[day], pair);
+        pairRow[pair] = Math.addExact(pairRow[pair], amount);
+        pairCountRow[pair]++;
+
+        long[] categoryRow = categorySums[day] = ensureRow(categorySums[day], category);
+        long[] categoryCountRow = categoryCounts[day] = ensureRow(categoryCounts[day], category);
+        categoryRow[category] = Math.addExact(categoryRow[category], amount);
+        categoryCountRow[category]++;
+
+        daySums[day] = Math.addExact(daySums[day], amount);
+        dayCounts[day]++;
+    }
+
+    private int pairId(int category, int product) {
+        Integer id = pairIds.get(((long) category << 32) | product);
+        if (id != null) {
+            return id;
+        }
+        if (pairCount == pairCategory.length) {
+            pairCategory = Arrays.copyOf(pairCategory, pairCount * 2);
+            pairProduct = Arrays.copyOf(pairProduct, pairCount * 2);
+        }
+        pairCategory[pairCount] = category;
+        pairProduct[pairCount] = product;
+        pairIds.put(((long) category << 32) | product, pairCount);
+
+        if (product >= pairsByProduct.length) {
+            pairsByProduct = Arrays.copyOf(pairsByProduct, Math.max(product + 1, pairsByProduct.length * 2));
+        }
+        int[] list = pairsByProduct[product];
+        list = list == null ? new int[1] : Arrays.copyOf(list, list.length + 1);
+        list[list.length - 1] = pairCount;
+        pairsByProduct[product] = list;
+        return pairCount++;
+    }
+
+    // 日の枠番号を返す。初めての日なら新しい枠を割り当てる
+    private int daySlot(long epochDay) {
+        if (epochDay == lastEpochDay) {
+            return lastSlot;
+        }
+        Integer slot = daySlots.get(epochDay);
+        if (slot == null) {
+            if (slotCount == daySums.length) {
+                int newCapacity = Math.max(16, slotCount + (slotCount >> 1));
+                pairSums = Arrays.copyOf(pairSums, newCapacity);
+                pairCounts = Arrays.copyOf(pairCounts, newCapacity);
+                categorySums = Arrays.copyOf(categorySums, newCapacity);
+                categoryCounts = Arrays.copyOf(categoryCounts, newCapacity);
+                daySums = Arrays.copyOf(daySums, newCapacity);
+                dayCounts = Arrays.copyOf(dayCounts, newCapacity);
+            }
+            slot = slotCount++;
+            daySlots.put(epochDay, slot);
+        }
+        lastEpochDay = epochDay;
+        lastSlot = slot;
+        return slot;
+    }
+
+    // 期間（両端を含む。nullは制限なし）に入る日の「日 → 枠番号」（日付順）
+    private NavigableMap<Long, Integer> daysIn(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return Collections.emptyNavigableMap();
+        }
+        NavigableMap<Long, Integer> days = daySlots;
+        if (from != null) {
+            days = days.tailMap(from.toEpochDay(), true);
+        }
+        if (to != null) {
+            days = days.headMap(to.toEpochDay(), true);
+        }
+        return days;
+    }
+
+    private static long[] ensureRow(long[] row, int index) {
+        if (row == null) {
+            return new long[Math.max(16, index + 1)];
+        }
+        if (index >= row.length) {
+            return Arrays.copyOf(row, Math.max(index + 1, row.length * 2));
+        }
+        return row;
+    }
+
+    // ===== 問い合わせ =====
+    // category / product / from / to はnullなら「すべて」を表す。日付の範囲は両端を含む。
+
+    /**
+     * 条件に合う売上金額の合計
+     */
+    public long revenue(String category, String product, LocalDate from, LocalDate to) {
+        return sum(category, product, from, to, false);
+    }
+
+    /**
+     * 条件に合う売上件数
+     */
+    public long count(String category, String product, LocalDate from, LocalDate to) {
+        return sum(category, product, from, to, true);
+    }
+
+    private long sum(String category, String product, LocalDate from, LocalDate to, boolean counts) {
+        int categoryId = category == null ? -1 : categories.idOf(category);
+        int productId = product == null ? -1 : products.idOf(product);
+        if ((category != null && categoryId < 0) || (product != null && productId < 0)) {
+            return 0;
+        }
+        Collection<Integer> slots = daysIn(from, to).values();
+        long total = 0;
+        if (product != null) {
+            long[][] rows = counts ? pairCounts : pairSums;
+            for (int pair : pairsOf(productId)) {
+                if (categoryId < 0 || pairCategory[pair] == categoryId) {
+                    total += sumColumn(rows, pair, slots);
+                }
+            }
+        } else if (category != null) {
+            total = sumColumn(counts ? categoryCounts : categorySums, categoryId, slots);
+        } else {
+            long[] values = counts ? dayCounts : daySums;
+            for (int slot : slots) {
+                total += values[slot];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 日ごとの売上金額（データのある日のみ、日付順）
+     */
+    public Map<LocalDate, Long> revenueByDay(String category, String product, LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> result = new LinkedHashMap<>();
+        for (long day : daysIn(from, to).keySet()) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            long value = revenue(category, product, date, date);
+            if (value != 0 || count(category, product, date, date) > 0) {
+                result.put(date, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * カテゴリごとの売上金額（期間で絞り込み）
+     */
+    public Map<String, Long> revenueByCategory(LocalDate from, LocalDate to) {
+        Collection<Integer> slots = daysIn(from, to).values();
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < categories.size(); id++) {
+            result.put(categories.valueOf(id), sumColumn(categorySums, id, slots));
+        }
+        return result;
+    }
+
+    /**
+     * 商品ごとの売上金額（カテゴリと期間で絞り込み。categoryがnullなら全カテゴリ）
+     */
+    public Map<String, Long> revenueByProduct(String category, LocalDate from, LocalDate to) {
+        int categoryId = category == null ? -1 : categories.idOf(category);
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (category != null && categoryId < 0) {
+            return result;
+        }
+        Collection<Integer> slots = daysIn(from, to).values();
+        for (int pair = 0; pair < pairCount; pair++) {
+            if (categoryId < 0 || pairCategory[pair] == categoryId) {
+                result.merge(products.valueOf(pairProduct[pair]), sumColumn(pairSums, pair, slots), Long::sum);
+            }
+        }
+        return result;
+    }
+
+    private static long sumColumn(long[][] rows, int column, Collection<Integer> slots) {
+        long total = 0;
+        for (int slot : slots) {
+            long[] row = rows[slot];
+            if (row != null && column < row.length) {
+                total += row[column];
+            }
+        }
+        return total;
+    }
+
+    private int[] pairsOf(int productId) {
+        int[] list = productId < pairsByProduct.length ? pairsByProduct[productId] : null;
+        return list == null ? new int[0] : list;
+    }
+
+    public StringDictionary getCategories() { return categories; }
+    public StringDictionary getProducts() { return products; }
+
+    public LocalDate getFirstDay() { return daySlots.isEmpty() ? null : LocalDate.ofEpochDay(daySlots.firstKey()); }
+    public LocalDate getLastDay() { return daySlots.isEmpty() ? null : LocalDate.ofEpochDay(daySlots.lastKey()); }
+
+    // データのある日数
+    public int getDayCount() { return slotCount; }
+}
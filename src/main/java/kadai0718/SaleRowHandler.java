@@ -0,0 +1,42 @@
+package kadai0718;
+
+// バイト列から直接解析した売上行を受け取るコールバック
+// 数値列はプリミティブのまま渡されるため、行ごとの中間Stringは作られない
+public interface SaleRowHandler {
+
+    /**
+     * 1行の解析に成功したときに呼ばれる
+     *
+     * @param lineNumber   ファイル先頭からの行番号（1始まり、ヘッダー行を含む）
+     * @param productName  商品名
+     * @param category     カテゴリ
+     * @param quantity     売上個数
+     * @param unitPrice    単価
+     * @param epochSecond  販売日時（LocalDateTimeをUTCとみなしたエポック秒。小数秒は切り捨て）
+     */
+    void onRow(long lineNumber, String productName, String category, int quantity, int unitPrice, long epochSecond);
+
+    /**
+     * 小数秒つきで1行を受け取る（リーダーはこちらを呼ぶ）
+     * 既定では小数秒を捨ててonRowに渡す。秒単位の列に格納するハンドラーはそのままでよく、
+     * LocalDateTimeを作るハンドラーはこちらを実装して小数秒を保つ
+     *
+     * @param nanoOfSecond 販売日時の小数秒（ナノ秒、0～999,999,999）
+     */
+    default void onRow(long lineNumber, String productName, String category, int quantity, int unitPrice,
+                       long epochSecond, int nanoOfSecond) {
+        onRow(lineNumber, productName, category, quantity, unitPrice, epochSecond);
+    }
+
+    /**
+     * 行の解析に失敗したときに呼ばれる
+     * 既定では何もしない（件数はSalesCsvReader.getRejectedCountで分かる）。汚れたデータで行ごとに出力しないよう、
+     * 内容を残したい場合はRejectedRowSinkに渡して、最後にprintSummaryで件数と見本をまとめて出すこと
+     *
+     * @param lineNumber ファイル先頭からの行番号
+     * @param error      失敗の種類
+     * @param rawLine    元の行の内容
+     */
+    default void onError(long lineNumber, SalesCsvReader.ParseError error, String rawLine) {
+    }
+}
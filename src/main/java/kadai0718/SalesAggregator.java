@@ -0,0 +1,132 @@
+package kadai0718;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// 列指向テーブル上のグループ集計エンジン
+// 売上金額（個数×単価）をlongで集計し、カテゴリ・商品・日ごとの合計／件数／最小／最大を求める
+public class SalesAggregator {
+
+    // 集計のキーにする列
+    public enum Dimension {
+        CATEGORY,  // カテゴリの辞書ID
+        PRODUCT,   // 商品の辞書ID
+        DAY        // 販売日（1970-01-01からの日数）
+    }
+
+    private static final int MIN_ROWS_PER_TASK = 1 << 16; // これより小さい範囲は分割しない
+
+    private SalesAggregator() {
+    }
+
+    /**
+     * 売上金額をキーごとに集計する（単一スレッド）
+     */
+    public static LongGroupBy revenueBy(SalesTable table, Dimension dimension) {
+        LongGroupBy result = new LongGroupBy(expectedGroups(table, dimension));
+        aggregateRange(table, dimension, 0, table.size(), result);
+        return result;
+    }
+
+    /**
+     * 売上金額をキーごとに集計する（行範囲ごとに部分集計し、最後にまとめる）
+     */
+    public static LongGroupBy revenueByParallel(SalesTable table, Dimension dimension, ForkJoinPool pool) {
+        return pool.invoke(new PartialAggregation(table, dimension, 0, table.size()));
+    }
+
+    public static LongGroupBy revenueByParallel(SalesTable table, Dimension dimension) {
+        return revenueByParallel(table, dimension, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 行範囲 [from, to) の売上金額を集計表に加える
+     * キーの列ごとにループを分けて、ループ内で分岐しないようにしている
+     */
+    static void aggregateRange(SalesTable table, Dimension dimension, int from, int to, LongGroupBy target) {
+        int[] quantities = table.quantityColumn();
+        int[] unitPrices = table.unitPriceColumn();
+        switch (dimension) {
+            case CATEGORY -> {
+                int[] keys = table.categoryIdColumn();
+                for (int row = from; row < to; row++) {
+                    target.add(keys[row], (long) quantities[row] * unitPrices[row]);
+                }
+            }
+            case PRODUCT -> {
+                int[] keys = table.productIdColumn();
+                for (int row = from; row < to; row++) {
+                    target.add(keys[row], (long) quantities[row] * unitPrices[row]);
+                }
+            }
+            case DAY -> {
+                long[] seconds = table.epochSecondColumn();
+                for (int row = from; row < to; row++) {
+                    target.add((int) Math.floorDiv(seconds[row], 86400L), (long) quantities[row] * unitPrices[row]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 集計結果のキーを表示用の名前に変換した合計の一覧（キーの昇順）
+     */
+    public static Map<String, Long> namedTotals(SalesTable table, Dimension dimension, LongGroupBy groups) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int key : groups.keys()) {
+            result.put(label(table, dimension, key), groups.getSum(key));
+        }
+        return result;
+    }
+
+    static String label(SalesTable table, Dimension dimension, int key) {
+        return switch (dimension) {
+            case CATEGORY -> table.getCategories().valueOf(key);
+            case PRODUCT -> table.getProducts().valueOf(key);
+            case DAY -> LocalDate.ofEpochDay(key).toString();
+        };
+    }
+
+    private static int expectedGroups(SalesTable table, Dimension dimension) {
+        return switch (dimension) {
+            case CATEGORY -> table.getCategories().size();
+            case PRODUCT -> table.getProducts().size();
+            case DAY -> 366;
+        };
+    }
+
+    // 行範囲を二分しながら部分集計し、結果をマージするタスク
+    @SuppressWarnings("serial") // ForkJoinTaskはSerializableだが、タスクを直列化することはない
+    private static class PartialAggregation extends RecursiveTask<LongGroupBy> {
+        private final SalesTable table;
+        private final Dimension dimension;
+        private final int from;
+        private final int to;
+
+        PartialAggregation(SalesTable table, Dimension dimension, int from, int to) {
+            this.table = table;
+            this.dimension = dimension;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LongGroupBy compute() {
+            if (to - from <= MIN_ROWS_PER_TASK) {
+                LongGroupBy partial = new LongGroupBy(expectedGroups(table, dimension));
+                aggregateRange(table, dimension, from, to, partial);
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            PartialAggregation left = new PartialAggregation(table, dimension, from, middle);
+            left.fork();
+            LongGroupBy right = new PartialAggregation(table, dimension, middle, to).compute();
+            LongGroupBy result = left.join();
+            result.merge(right);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 売上データのブロック単位のバイナリ列指向ファイル形式
+//
+// ファイル構成:
+//   [ヘッダー] マジック "SALESCOL" + バージョン(int)
+//   [ブロック]... 最大 BLOCK_ROWS 行ずつ、列ごとに符号化して格納
+//       商品ID・カテゴリID : 辞書ID をビットパック
+//       売上個数・単価     : ブロック内最小値からの差をビットパック (frame of reference)
+//       販売日時           : 先頭値 + 前行との差(ジグザグ符号化)をビットパック (delta)
+//   [フッター] 商品辞書, カテゴリ辞書, ブロック索引 (位置・行数・ゾーンマップ)
+//   [末尾] フッター位置(long) + マジック
+//
+// ゾーンマップ（ブロックごとの販売日時・個数・単価の最小/最大）により、
+// 読み込み時に条件と重ならないブロックは展開せずに読み飛ばせる。
+public class SalesColumnFile {
+    private static final byte[] MAGIC = "SALESCOL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    static final int BLOCK_ROWS = 1 << 16;
+
+    private SalesColumnFile() {
+    }
+
+    // CSV → バイナリ変換ツール
+    // 使い方: java kadai0718.SalesColumnFile <入力CSV> <出力ファイル>
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("使い方: java kadai0718.SalesColumnFile <入力CSV> <出力ファイル> [不正な行の隔離ファイル]");
+            return;
+        }
+        long start = System.nanoTime();
+        int rows;
+        try (RejectedRowSink rejections = new RejectedRowSink()) {
+            if (args.length > 2) {
+                rejections.setQuarantineFile(Paths.get(args[2]));
+            }
+            rows = convertCsv(Paths.get(args[0]), Paths.get(args[1]), rejections, rejections.getMaxRejectedPerRange());
+            rejections.printSummary();
+        }
+        System.out.printf("%d行を変換しました (%.1f秒)%n", rows, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * CSVファイルを読み込み、販売日時順に並べ替えてバイナリ形式で書き出す
+     * （日時順にしておくとブロックごとの日時の範囲が狭くなり、期間指定の読み込みで多くのブロックを読み飛ばせる）
+     *
+     * @return 書き出した行数
+     */
+    public static int convertCsv(Path csvFile, Path outputFile, ParallelSalesLoader.ErrorReporter errors) throws IOException {
+        return convertCsv(csvFile, outputFile, errors, ParallelSalesLoader.DEFAULT_MAX_REJECTED_PER_RANGE);
+    }
+
+    /**
+     * @param maxRejectedPerRange 読み込みの範囲ごとに内容を保持する不正な行の上限
+     * @return 書き出した行数
+     */
+    public static int convertCsv(Path csvFile, Path outputFile, ParallelSalesLoader.ErrorReporter errors,
+                                 int maxRejectedPerRange) throws IOException {
+        SalesTable table = sortedByTime(SalesTable.loadParallel(csvFile, errors, maxRejectedPerRange));
+        write(table, outputFile);
+        return table.size();
+    }
+
+    // 販売日時の昇順（同時刻は元の行順）に並べ替えたテーブル
+    static SalesTable sortedByTime(SalesTable table) {
+        int n = table.size();
+        int[] rows = SalesTimeIndex.sortRows(table.epochSecondColumn(), n);
+        int[] productIds = new int[n];
+        int[] categoryIds = new int[n];
+        int[] quantities = new int[n];
+        int[] unitPrices = new int[n];
+        long[] epochSeconds = new long[n];
+        for (int i = 0; i < n; i++) {
+            int row = rows[i];
+            productIds[i] = table.productIdColumn()[row];
+            categoryIds[i] = table.categoryIdColumn()[row];
+            quantities[i] = table.quantityColumn()[row];
+            unitPrices[i] = table.unitPriceColumn()[row];
+            epochSeconds[i] = table.epochSecondColumn()[row];
+        }
+        return SalesTable.of(table.getProducts(), table.getCategories(), productIds, categoryIds,
+                quantities, unitPrices, epochSeconds, n);
+    }
+
+    // ===== 書き込み =====
+
+    /**
+     * テーブル全体をバイナリ形式で書き出す
+     */
+    public static void write(SalesTable table, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4);
+            header.put(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header);
+
+            List<BlockMeta> blocks = new ArrayList<>();
+            long[] scratch = new long[BLOCK_ROWS];
+            ByteBuffer blockBuffer = ByteBuffer.allocate(BLOCK_ROWS * 8 * 5 + 64);
+            for (int from = 0; from < table.size(); from += BLOCK_ROWS) {
+                int to = Math.min(table.size(), from + BLOCK_ROWS);
+                blockBuffer.clear();
+                BlockMeta meta = encodeBlock(table, from, to, scratch, blockBuffer);
+                meta.offset = channel.position();
+                blockBuffer.flip();
+                meta.length = blockBuffer.remaining();
+                writeFully(channel, blockBuffer);
+                blocks.add(meta);
+            }
+
+            long footerOffset = channel.position();
+            writeFully(channel, encodeFooter(table, blocks));
+            ByteBuffer trailer = ByteBuffer.allocate(8 + MAGIC.length);
+            trailer.putLong(footerOffset).put(MAGIC).flip();
+            writeFully(channel, trailer);
+        }
+    }
+
+    private static BlockMeta encodeBlock(SalesTable table, int from, int to, long[] scratch, ByteBuffer out) {
+        int n = to - from;
+        BlockMeta meta = new BlockMeta();
+        meta.rowCount = n;
+
+        // 辞書ID
+        packColumn(table.productIdColumn(), from, n, 0, scratch, out);
+        packColumn(table.categoryIdColumn(), from, n, 0, scratch, out);
+
+        // 売上個数・単価（最小値からの差）
+        int[] quantities = table.quantityColumn();
+        int[] prices = table.unitPriceColumn();
+        meta.minQuantity = Integer.MAX_VALUE;
+        meta.maxQuantity = Integer.MIN_VALUE;
+        meta.minUnitPrice = Integer.MAX_VALUE;
+        meta.maxUnitPrice = Integer.MIN_VALUE;
+        for (int row = from; row < to; row++) {
+            meta.minQuantity = Math.min(meta.minQuantity, quantities[row]);
+            meta.maxQuantity = Math.max(meta.maxQuantity, quantities[row]);
+            meta.minUnitPrice = Math.min(meta.minUnitPrice, prices[row]);
+            meta.maxUnitPrice = Math.max(meta.maxUnitPrice, prices[row]);
+        }
+        out.putInt(meta.minQuantity);
+        packColumn(quantities, from, n, meta.minQuantity, scratch, out);
+        out.putInt(meta.minUnitPrice);
+        packColumn(prices, from, n, meta.minUnitPrice, scratch, out);
+
+        // 販売日時（先頭値 + 差分）
+        long[] seconds = table.epochSecondColumn();
+        meta.minEpochSecond = Long.MAX_VALUE;
+        meta.maxEpochSecond = Long.MIN_VALUE;
+        long max = 0;
+        for (int i = 0; i < n; i++) {
+            long value = seconds[from + i];
+            meta.minEpochSecond = Math.min(meta.minEpochSecond, value);
+            meta.maxEpochSecond = Math.max(meta.maxEpochSecond, value);
+            long delta = i == 0 ? 0 : value - seconds[from + i - 1];
+            scratch[i] = (delta << 1) ^ (delta >> 63); // ジグザグ符号化（負の差も小さな正の数にする）
+            max |= scratch[i];
+        }
+        out.putLong(seconds[from]);
+        int width = bitWidth(max);
+        out.put((byte) width);
+        pack(scratch, n, width, out);
+        return meta;
+    }
+
+    private static void packColumn(int[] column, int from, int n, int base, long[] scratch, ByteBuffer out) {
+        long max = 0;
+        for (int i = 0; i < n; i++) {
+            scratch[i] = (long) column[from + i] - base;
+            max |= scratch[i];
+        }
+        int width = bitWidth(max);
+        out.put((byte) width);
+        pack(scratch, n, width, out);
+    }
+
+    private static ByteBuffer encodeFooter(SalesTable table, List<BlockMeta> blocks) {
+        List<byte[]> strings = new ArrayList<>();
+        int size = 4 + 4 + 4 + blocks.size() * BlockMeta.BYTES;
+        for (StringDictionary dictionary : List.of(table.getProducts(), table.getCategories())) {
+            for (String value : dictionary.values()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                strings.add(bytes);
+                size += 4 + bytes.length;
+            }
+        }
+        ByteBuffer footer = ByteBuffer.allocate(size);
+        int index = 0;
+        for (StringDictionary dictionary : List.of(table.getProducts(), table.getCategories())) {
+            footer.putInt(dictionary.size());
+            for (int i = 0; i < dictionary.size(); i++) {
+                byte[] bytes = strings.get(index++);
+                footer.putInt(bytes.length).put(bytes);
+            }
+        }
+        footer.putInt(blocks.size());
+        for (BlockMeta meta : blocks) {
+            meta.writeTo(footer);
+        }
+        return footer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // ===== ビットパック =====
+
+    static int bitWidth(long maxValue) {
+        return 64 - Long.numberOfLeadingZeros(maxValue);
+    }
+
+    // 下位widthビットずつ詰めてlongの列として書く
+    private static void pack(long[] values, int n, int width, ByteBuffer out) {
+        if (width == 0) {
+            return; // 全て0なら本体は不要
+        }
+        long word = 0;
+        int bits = 0;
+        for (int i = 0; i < n; i++) {
+            long value = values[i];
+            word |= value << bits;
+            bits += width;
+            if (bits >= 64) {
+                out.putLong(word);
+                bits -= 64;
+                word = bits > 0 ? value >>> (width - bits) : 0;
+            }
+        }
+        if (bits > 0) {
+            out.putLong(word);
+        }
+    }
+
+    // packの逆。position から読み、読み終えた位置を返す
+    private static int unpack(ByteBuffer in, int position, int n, int width, long[] out) {
+        if (width == 0) {
+            Arrays.fill(out, 0, n, 0L);
+            return position;
+        }
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        long bitPosition = 0;
+        for (int i = 0; i < n; i++, bitPosition += width) {
+            int word = position + (int) (bitPosition >>> 6) * 8;
+            int offset = (int) (bitPosition & 63);
+            long value = in.getLong(word) >>> offset;
+            if (offset + width > 64) {
+                value |= in.getLong(word + 8) << (64 - offset);
+            }
+            out[i] = value & mask;
+        }
+        return position + (int) ((n * (long) width + 63) >>> 6) * 8;
+    }
+
+    // ===== 読み込み =====
+
+    /**
+     * ファイルを開く（フッターを読み、ブロック本体はメモリマップで必要なものだけ展開する）
+     */
+    public static Reader open(Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    // 読み込みの絞り込み条件。ブロックのゾーンマップと重ならなければそのブロックは読み飛ばす
+    public static class ZoneFilter {
+        private long minEpochSecond = Long.MIN_VALUE;
+        private long maxEpochSecond = Long.MAX_VALUE;
+        private int minQuantity = Integer.MIN_VALUE;
+        private int maxQuantity = Integer.MAX_VALUE;
+        private int minUnitPrice = Integer.MIN_VALUE;
+        private int maxUnitPrice = Integer.MAX_VALUE;
+
+        public static ZoneFilter all() {
+            return new ZoneFilter();
+        }
+
+        // 販売日時 [from, to)。nullなら制限なし
+        public ZoneFilter saleDateTime(LocalDateTime fromInclusive, LocalDateTime toExclusive) {
+            minEpochSecond = fromInclusive == null ? Long.MIN_VALUE : fromInclusive.toEpochSecond(ZoneOffset.UTC);
+            maxEpochSecond = toExclusive == null ? Long.MAX_VALUE : toExclusive.toEpochSecond(ZoneOffset.UTC) - 1;
+            return this;
+        }
+
+        // 売上個数 [min, max]
+        public ZoneFilter quantity(int min, int max) {
+            minQuantity = min;
+            maxQuantity = max;
+            return this;
+        }
+
+        // 単価 [min, max]
+        public ZoneFilter unitPrice(int min, int max) {
+            minUnitPrice = min;
+            maxUnitPrice = max;
+            return this;
+        }
+
+        boolean overlaps(BlockMeta block) {
+            return block.maxEpochSecond >= minEpochSecond && block.minEpochSecond <= maxEpochSecond
+                    && block.maxQuantity >= minQuantity && block.minQuantity <= maxQuantity
+                    && block.maxUnitPrice >= minUnitPrice && block.minUnitPrice <= maxUnitPrice;
+        }
+
+        boolean matches(long epochSecond, int quantity, int unitPrice) {
+            return epochSecond >= minEpochSecond && epochSecond <= maxEpochSecond
+                    && quantity >= minQuantity && quantity <= maxQuantity
+                    && unitPrice >= minUnitPrice && unitPrice <= maxUnitPrice;
+        }
+    }
+
+    // 展開した1ブロック分の列（使い回して読み込む）
+    public static class BlockColumns {
+        final int[] productIds = new int[BLOCK_ROWS];
+        final int[] categoryIds = new int[BLOCK_ROWS];
+        final int[] quantities = new int[BLOCK_ROWS];
+        final int[] unitPrices = new int[BLOCK_ROWS];
+        final long[] epochSeconds = new long[BLOCK_ROWS];
+        int size;
+
+        public int size() { return size; }
+    }
+
+    // ブロック単位で処理するコールバック
+    @FunctionalInterface
+    public interface BlockVisitor {
+        void visit(BlockColumns block);
+    }
+
+    public static class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final StringDictionary products = new StringDictionary();
+        private final StringDictionary categories = new StringDictionary();
+        private final List<BlockMeta> blocks = new ArrayList<>();
+        private final long[] scratch = new long[BLOCK_ROWS];
+        private int lastScannedBlocks;
+        private int lastSkippedBlocks;
+
+        private Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            ByteBuffer trailer = readAt(size - 8 - MAGIC.length, 8 + MAGIC.length);
+            long footerOffset = trailer.getLong();
+            byte[] magic = new byte[MAGIC.length];
+            trailer.get(magic);
+            ByteBuffer header = readAt(0, MAGIC.length + 4);
+            byte[] headerMagic = new byte[MAGIC.length];
+            header.get(headerMagic);
+            if (!Arrays.equals(magic, MAGIC) || !Arrays.equals(headerMagic, MAGIC)) {
+                channel.close();
+                throw new IOException("売上バイナリファイルではありません: " + file);
+            }
+            if (header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException("対応していないバージョンです: " + file);
+            }
+
+            ByteBuffer footer = readAt(footerOffset, (int) (size - 8 - MAGIC.length - footerOffset));
+            for (StringDictionary dictionary : List.of(products, categories)) {
+                int count = footer.getInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[footer.getInt()];
+                    footer.get(bytes);
+                    dictionary.intern(new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+            int blockCount = footer.getInt();
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(BlockMeta.readFrom(footer));
+            }
+        }
+
+        private ByteBuffer readAt(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("ファイルが途中で終わっています");
+                }
+            }
+            return buffer.flip();
+        }
+
+        /**
+         * 条件に重なるブロックだけを展開してvisitorに渡す（行単位の絞り込みは行わない）
+         */
+        public void scanBlocks(ZoneFilter filter, BlockVisitor visitor) throws IOException {
+            BlockColumns columns = new BlockColumns();
+            lastScannedBlocks = 0;
+            lastSkippedBlocks = 0;
+            for (BlockMeta block : blocks) {
+                if (!filter.overlaps(block)) {
+                    lastSkippedBlocks++;
+                    continue;
+                }
+                lastScannedBlocks++;
+                decode(block, columns);
+                visitor.visit(columns);
+            }
+        }
+
+        /**
+         * 条件に合う行を列指向テーブルとして読み込む（辞書はファイルのものをそのまま使う）
+         */
+        public SalesTable read(ZoneFilter filter) throws IOException {
+            int capacity = 0;
+            for (BlockMeta block : blocks) {
+                if (filter.overlaps(block)) {
+                    capacity += block.rowCount;
+                }
+            }
+            int[] productIds = new int[capacity];
+            int[] categoryIds = new int[capacity];
+            int[] quantities = new int[capacity];
+            int[] unitPrices = new int[capacity];
+            long[] epochSeconds = new long[capacity];
+            int[] size = {0};
+            scanBlocks(filter, block -> {
+                int n = size[0];
+                for (int i = 0; i < block.size; i++) {
+                    if (filter.matches(block.epochSeconds[i], block.quantities[i], block.unitPrices[i])) {
+                        productIds[n] = block.productIds[i];
+                        categoryIds[n] = block.categoryIds[i];
+                        quantities[n] = block.quantities[i];
+                        unitPrices[n] = block.unitPrices[i];
+                        epochSeconds[n] = block.epochSeconds[i];
+                        n++;
+                    }
+                }
+                size[0] = n;
+            });
+            int n = size[0];
+            return SalesTable.of(products, categories, Arrays.copyOf(productIds, n), Arrays.copyOf(categoryIds, n),
+                    Arrays.copyOf(quantities, n), Arrays.copyOf(unitPrices, n), Arrays.copyOf(epochSeconds, n), n);
+        }
+
+        private void decode(BlockMeta block, BlockColumns out) throws IOException {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, block.offset, block.length);
+            int n = block.rowCount;
+            out.size = n;
+            int position = 0;
+
+            position = unpackInts(in, position, n, 0, out.productIds);
+            position = unpackInts(in, position, n, 0, out.categoryIds);
+            int quantityBase = in.getInt(position);
+            position = unpackInts(in, position + 4, n, quantityBase, out.quantities);
+            int priceBase = in.getInt(position);
+            position = unpackInts(in, position + 4, n, priceBase, out.unitPrices);
+
+            long value = in.getLong(position);
+            int width = in.get(position + 8);
+            unpack(in, position + 9, n, width, scratch);
+            for (int i = 0; i < n; i++) {
+                long zigzag = scratch[i];
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+                out.epochSeconds[i] = value;
+            }
+        }
+
+        private int unpackInts(ByteBuffer in, int position, int n, int base, int[] out) {
+            int width = in.get(position);
+            int next = unpack(in, position + 1, n, width, scratch);
+            for (int i = 0; i < n; i++) {
+                out[i] = (int) (scratch[i] + base);
+            }
+            return next;
+        }
+
+        public int getBlockCount() { return blocks.size(); }
+        public long getRowCount() { return blocks.stream().mapToLong(b -> b.rowCount).sum(); }
+        public StringDictionary getProducts() { return products; }
+        public StringDictionary getCategories() { return categories; }
+        // 直前の読み込みで展開したブロック数・読み飛ばしたブロック数
+        public int getLastScannedBlocks() { return lastScannedBlocks; }
+        public int getLastSkippedBlocks() { return lastSkippedBlocks; }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // ブロックの位置・行数・ゾーンマップ（フッターに格納）
+    static class BlockMeta {
+        static final int BYTES = 8 + 4 + 4 + 8 + 8 + 4 * 4;
+
+        long offset;
+        int length;
+        int rowCount;
+        long minEpochSecond;
+        long maxEpochSecond;
+        int minQuantity;
+        int maxQuantity;
+        int minUnitPrice;
+        int maxUnitPrice;
+
+        void writeTo(ByteBuffer out) {
+            out.putLong(offset).putInt(length).putInt(rowCount)
+                    .putLong(minEpochSecond).putLong(maxEpochSecond)
+                    .putInt(minQuantity).putInt(maxQuantity)
+                    .putInt(minUnitPrice).putInt(maxUnitPrice);
+        }
+
+        static BlockMeta readFrom(ByteBuffer in) {
+            BlockMeta meta = new BlockMeta();
+            meta.offset = in.getLong();
+            meta.length = in.getInt();
+            meta.rowCount = in.getInt();
+            meta.minEpochSecond = in.getLong();
+            meta.maxEpochSecond = in.getLong();
+            meta.minQuantity = in.getInt();
+            meta.maxQuantity = in.getInt();
+            meta.minUnitPrice = in.getInt();
+            meta.maxUnitPrice = in.getInt();
+            return meta;
+        }
+    }
+}
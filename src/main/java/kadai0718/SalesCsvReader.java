@@ -0,0 +1,354 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// 売上CSVをバイト列のまま解析する高速リーダー
+// String.splitやInteger.parseIntを使わず、バッファ上でフィールド境界を探して数値・日時を直接変換する
+// 1レコード＝1行が前提で、引用符で囲まれたフィールド内の改行には対応しない（その行はQUOTEとして除外される）
+public class SalesCsvReader {
+
+    // 行の解析に失敗した理由
+    public enum ParseError {
+        FIELD_COUNT("無効な行フォーマット"),
+        NUMBER_FORMAT("数値変換エラー"),
+        DATE_TIME("日付時刻解析エラー"),
+        QUOTE("引用符の対応が不正");
+
+        private final String description;
+
+        ParseError(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() { return description; }
+    }
+
+    static final int FIELD_COUNT = 5;                 // 商品名,カテゴリ,売上個数,単価,販売日時
+    static final long INVALID = Long.MIN_VALUE;       // 数値・日時の変換失敗を表す値
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final ByteStringCache strings = new ByteStringCache();
+    private final int[] fieldStart = new int[FIELD_COUNT];
+    private final int[] fieldEnd = new int[FIELD_COUNT];
+    private final boolean[] fieldEscaped = new boolean[FIELD_COUNT]; // ""エスケープを含むか
+    private long lineNumber;   // 最後に処理した行の行番号
+    private long rejectedCount; // 解析に失敗した行の数
+    private int linesToSkip;   // ヘッダーなど読み飛ばす行数
+
+    /**
+     * ファイル全体を読み込み、ヘッダー行を除いた各行をハンドラーに渡す
+     *
+     * @param file    読み込むCSVファイル
+     * @param handler 解析結果の受け取り先
+     */
+    public static void read(Path file, SaleRowHandler handler) throws IOException {
+        new SalesCsvReader().readFile(file, true, handler);
+    }
+
+    /**
+     * ファイルを1MB単位でバッファに読み込み、完全な行だけを解析する。行の途中は次の読み込みに持ち越す。
+     */
+    public void readFile(Path file, boolean skipHeader, SaleRowHandler handler) throws IOException {
+        lineNumber = 0;
+        rejectedCount = 0;
+        linesToSkip = skipHeader ? 1 : 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] buf = new byte[READ_BUFFER_SIZE];
+            int filled = 0;
+            boolean firstChunk = true;
+            while (true) {
+                int n = channel.read(ByteBuffer.wrap(buf, filled, buf.length - filled));
+                boolean endOfInput = n < 0;
+                if (n > 0) {
+                    filled += n;
+                }
+                int start = 0;
+                if (firstChunk && (filled >= 3 || endOfInput)) {
+                    start = skipBom(buf, filled);
+                    firstChunk = false;
+                } else if (firstChunk) {
+                    continue; // BOM判定に必要なバイト数がまだない
+                }
+                int consumed = parse(buf, start, filled, endOfInput, handler);
+                if (endOfInput) {
+                    break;
+                }
+                filled -= consumed;
+                System.arraycopy(buf, consumed, buf, 0, filled);
+                if (filled == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2); // バッファより長い行
+                }
+            }
+        }
+    }
+
+    /**
+     * buf[from, to) に含まれる行を解析する
+     *
+     * @param endOfInput trueなら改行で終わらない最後の行も解析する
+     * @return 解析し終えた位置（未完の行の先頭）
+     */
+    int parse(byte[] buf, int from, int to, boolean endOfInput, SaleRowHandler handler) {
+        int pos = from;
+        while (pos < to) {
+            int newline = indexOf(buf, pos, to, (byte) '\n');
+            if (newline < 0) {
+                if (!endOfInput) {
+                    return pos;
+                }
+                newline = to;
+            }
+            lineNumber++;
+            int lineEnd = newline;
+            if (lineEnd > pos && buf[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (linesToSkip > 0) {
+                linesToSkip--;
+            } else {
+                parseLine(buf, pos, lineEnd, handler);
+            }
+            pos = newline + 1;
+        }
+        return Math.min(pos, to);
+    }
+
+    private void parseLine(byte[] buf, int start, int end, SaleRowHandler handler) {
+        // フィールド境界を探す（引用符で囲まれたフィールド内のカンマは区切りとみなさない）
+        // 行はparseで改行ごとに切り出し済みなので、引用符内の改行はここに届かない。
+        // 改行を含むフィールドは閉じ引用符が見つからずQUOTEとなり、続きの行も別の不正行として扱われる。
+        // ParallelSalesLoaderも改行位置でファイルを分割するため、複数行にまたがるレコードは読めない
+        int field = 0;
+        int p = start;
+        while (true) {
+            if (field == FIELD_COUNT) {
+                reject(handler, ParseError.FIELD_COUNT, buf, start, end);
+                return;
+            }
+            if (p < end && buf[p] == '"') {
+                int q = p + 1;
+                boolean escaped = false;
+                while (true) {
+                    if (q >= end) {
+                        reject(handler, ParseError.QUOTE, buf, start, end);
+                        return;
+                    }
+                    if (buf[q] == '"') {
+                        if (q + 1 < end && buf[q + 1] == '"') {
+                            escaped = true;
+                            q += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    q++;
+                }
+                fieldStart[field] = p + 1;
+                fieldEnd[field] = q;
+                fieldEscaped[field] = escaped;
+                p = q + 1;
+                if (p < end && buf[p] != ',') {
+                    reject(handler, ParseError.QUOTE, buf, start, end);
+                    return;
+                }
+            } else {
+                int q = indexOf(buf, p, end, (byte) ',');
+                if (q < 0) {
+                    q = end;
+                }
+                fieldStart[field] = p;
+                fieldEnd[field] = q;
+                fieldEscaped[field] = false;
+                p = q;
+            }
+            field++;
+            if (p >= end) {
+                break;
+            }
+            p++; // カンマを読み飛ばす
+        }
+        if (field != FIELD_COUNT) {
+            reject(handler, ParseError.FIELD_COUNT, buf, start, end);
+            return;
+        }
+
+        // 数値・日時はバイト列から直接変換（中間のStringを作らない）
+        long quantity = parseInt(buf, fieldStart[2], fieldEnd[2]);
+        long unitPrice = parseInt(buf, fieldStart[3], fieldEnd[3]);
+        if (quantity == INVALID || unitPrice == INVALID) {
+            reject(handler, ParseError.NUMBER_FORMAT, buf, start, end);
+            return;
+        }
+        long epochSecond = parseEpochSecond(buf, fieldStart[4], fieldEnd[4]);
+        if (epochSecond == INVALID) {
+            reject(handler, ParseError.DATE_TIME, buf, start, end);
+            return;
+        }
+
+        handler.onRow(lineNumber, text(buf, 0), text(buf, 1), (int) quantity, (int) unitPrice, epochSecond,
+                parseNanoOfSecond(buf, fieldStart[4], fieldEnd[4]));
+    }
+
+    private String text(byte[] buf, int field) {
+        if (fieldEscaped[field]) {
+            return new String(buf, fieldStart[field], fieldEnd[field] - fieldStart[field], StandardCharsets.UTF_8)
+                    .replace("\"\"", "\"");
+        }
+        return strings.get(buf, fieldStart[field], fieldEnd[field]);
+    }
+
+    private void reject(SaleRowHandler handler, ParseError error, byte[] buf, int start, int end) {
+        rejectedCount++;
+        handler.onError(lineNumber, error, new String(buf, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    // ===== 他の読み込み処理からも使う変換ヘルパー =====
+
+    /**
+     * 符号付き10進整数をint範囲で解析する
+     *
+     * @return 解析した値。失敗時はINVALID
+     */
+    static long parseInt(byte[] buf, int from, int to) {
+        if (from >= to) {
+            return INVALID;
+        }
+        int i = from;
+        boolean negative = buf[i] == '-';
+        if (negative || buf[i] == '+') {
+            if (++i == to) {
+                return INVALID;
+            }
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+            if (value > 1L + Integer.MAX_VALUE) {
+                return INVALID;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? INVALID : value;
+    }
+
+    /**
+     * ISO形式の日時 (yyyy-MM-ddTHH:mm[:ss[.fraction]]) をUTCとみなしたエポック秒に変換する
+     *
+     * @return エポック秒。失敗時はINVALID
+     */
+    static long parseEpochSecond(byte[] buf, int from, int to) {
+        if (to - from < 16 || buf[from + 4] != '-' || buf[from + 7] != '-'
+                || buf[from + 10] != 'T' || buf[from + 13] != ':') {
+            return INVALID;
+        }
+        int year = digits(buf, from, 4);
+        int month = digits(buf, from + 5, 2);
+        int day = digits(buf, from + 8, 2);
+        int hour = digits(buf, from + 11, 2);
+        int minute = digits(buf, from + 14, 2);
+        int second = 0;
+        int p = from + 16;
+        if (p < to) {
+            if (buf[p] != ':' || p + 3 > to) {
+                return INVALID;
+            }
+            second = digits(buf, p + 1, 2);
+            p += 3;
+            if (p < to) {
+                // 小数秒は桁の検証のみ（値はparseNanoOfSecondで読む）
+                if (buf[p] != '.' || to - p - 1 < 1 || to - p - 1 > 9 || digits(buf, p + 1, to - p - 1) < 0) {
+                    return INVALID;
+                }
+            }
+        }
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+        return epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+    }
+
+    /**
+     * parseEpochSecondで検証済みの日時の小数秒をナノ秒で返す（小数秒がなければ0）
+     */
+    static int parseNanoOfSecond(byte[] buf, int from, int to) {
+        int p = from + 19; // yyyy-MM-ddTHH:mm:ss の直後
+        if (p >= to || buf[p] != '.') {
+            return 0;
+        }
+        int nano = 0;
+        for (int i = 1; i <= 9; i++) {
+            nano = nano * 10 + (p + i < to ? buf[p + i] - '0' : 0);
+        }
+        return nano;
+    }
+
+    // 固定桁の数字を読む（数字以外を含めば-1）
+    private static int digits(byte[] buf, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // 1970-01-01からの日数（グレゴリオ暦）
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    static int indexOf(byte[] buf, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int skipBom(byte[] buf, int filled) {
+        return filled >= 3 && (buf[0] & 0xFF) == 0xEF && (buf[1] & 0xFF) == 0xBB && (buf[2] & 0xFF) == 0xBF ? 3 : 0;
+    }
+
+    // 行番号の起点と読み飛ばし行数を設定する（ファイルの途中から解析する場合に使用）
+    void reset(long lineNumberBefore, int linesToSkip) {
+        this.lineNumber = lineNumberBefore;
+        this.linesToSkip = linesToSkip;
+    }
+
+    long getLineNumber() { return lineNumber; }
+
+    // これまでに解析に失敗した行の数（ハンドラーがonErrorを実装していなくても数える）
+    public long getRejectedCount() { return rejectedCount; }
+}
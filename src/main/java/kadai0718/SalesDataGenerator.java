@@ -0,0 +1,288 @@
+package kadai0718;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// 性能測定用の売上CSVを生成するクラス（sales_data.csvと同じ形式）
+// 同じシードからは常に同じファイルを生成するので、性能の変更前後を同じデータで比較できる。
+//
+// 現実の売上に近づけるため、次の偏りを持たせている:
+//   - 商品の人気: 人気順位に対するZipf分布（上位の少数の商品に売上が集中する）
+//   - 部門 → カテゴリ → 商品 の階層: 部門ごとに売れる時間帯が異なる（朝のパン、夕方の生鮮など）
+//   - 曜日: 週末は平日より売上件数が多い
+//   - 価格: 定価のほか、一定の割合で値引き価格になる
+//   - 個数: 1個が最も多く、まとめ買いほど少ない
+// 各日の行は販売日時の順に出力する（POSの書き出しと同じく、ファイル全体が時刻順になる）。
+public class SalesDataGenerator {
+    private static final byte[] HEADER = "商品名,カテゴリ,売上個数,単価,販売日時\n".getBytes(StandardCharsets.UTF_8);
+    private static final int PRODUCT_BITS = 20; // 1日分の並べ替えキーで商品番号に使うビット数
+
+    // 部門: 時間帯（0〜23時）ごとの売れやすさ
+    private static final int[] FRESH_HOURS =    {0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4, 5, 6, 5, 4, 5, 7, 9, 10, 8, 5, 3, 1, 0};
+    private static final int[] BAKERY_HOURS =   {0, 0, 0, 0, 0, 1, 4, 9, 10, 7, 4, 3, 5, 3, 2, 2, 3, 3, 3, 2, 1, 1, 0, 0};
+    private static final int[] BEVERAGE_HOURS = {1, 1, 0, 0, 0, 1, 2, 4, 5, 5, 5, 6, 8, 7, 6, 6, 6, 6, 5, 4, 3, 3, 2, 1};
+    private static final int[] SNACK_HOURS =    {1, 1, 0, 0, 0, 0, 0, 1, 1, 2, 3, 4, 5, 4, 5, 7, 8, 6, 5, 5, 5, 4, 3, 2};
+
+    // 商品マスタ: {カテゴリ, 商品名, 定価}。部門ごとの時間帯の傾向を持つ
+    private static final Object[][] DEPARTMENTS = {
+            {FRESH_HOURS, new String[][]{
+                    {"果物", "りんご", "150"}, {"果物", "みかん", "100"}, {"果物", "バナナ", "120"},
+                    {"果物", "ぶどう", "480"}, {"果物", "いちご", "598"}, {"果物", "キウイ", "90"},
+                    {"野菜", "キャベツ", "198"}, {"野菜", "トマト", "128"}, {"野菜", "にんじん", "88"},
+                    {"野菜", "たまねぎ", "78"}, {"野菜", "じゃがいも", "98"}, {"野菜", "レタス", "168"}}},
+            {BAKERY_HOURS, new String[][]{
+                    {"食品", "パン", "200"}, {"食品", "食パン", "220"}, {"食品", "クロワッサン", "160"},
+                    {"食品", "おにぎり", "130"}, {"食品", "弁当", "498"}, {"食品", "サンドイッチ", "298"},
+                    {"乳製品", "ヨーグルト", "300"}, {"乳製品", "チーズ", "398"}, {"乳製品", "バター", "458"}}},
+            {BEVERAGE_HOURS, new String[][]{
+                    {"飲料", "牛乳", "250"}, {"飲料", "ジュース", "180"}, {"飲料", "コーヒー", "400"},
+                    {"飲料", "お茶", "150"}, {"飲料", "水", "100"}, {"飲料", "炭酸水", "120"},
+                    {"飲料", "スポーツドリンク", "160"}, {"飲料", "紅茶", "180"}}},
+            {SNACK_HOURS, new String[][]{
+                    {"菓子", "チョコレート", "198"}, {"菓子", "ポテトチップス", "158"}, {"菓子", "クッキー", "248"},
+                    {"菓子", "アイス", "140"}, {"菓子", "ガム", "110"}}},
+    };
+
+    private final long seed;
+    private LocalDate startDate = LocalDate.of(2024, 1, 1);
+    private int days = 366;
+    private double zipfExponent = 1.1;      // 大きいほど上位の商品に集中する
+    private double discountRate = 0.1;      // 値引き価格で売れる割合
+    private double weekendFactor = 1.4;     // 週末の売上件数（平日比）
+
+    public SalesDataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // 使い方: java kadai0718.SalesDataGenerator <行数> <出力ファイル> [シード]
+    // 1行はおよそ43バイトなので、1GBはおよそ2,300万行
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("使い方: java kadai0718.SalesDataGenerator <行数> <出力ファイル> [シード]");
+            return;
+        }
+        long rows = Long.parseLong(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        Path output = Paths.get(args[1]);
+        long start = System.nanoTime();
+        new SalesDataGenerator(seed).generate(output, rows);
+        System.out.printf("%d行 (%dバイト) を生成しました (%.1f秒)%n",
+                rows, Files.size(output), (System.nanoTime() - start) / 1e9);
+    }
+
+    public void generate(Path file, long rows) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            generate(out, rows);
+        }
+    }
+
+    /**
+     * ヘッダー行と rows 行の売上を書き出す
+     */
+    public void generate(OutputStream output, long rows) throws IOException {
+        if (rows < 0) {
+            throw new IllegalArgumentException("行数は0以上を指定してください: " + rows);
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        Catalog catalog = new Catalog(zipfExponent);
+        long[] rowsPerDay = rowsPerDay(rows);
+
+        OutputStream out = new BufferedOutputStream(output, 1 << 20);
+        out.write(HEADER);
+        byte[] line = new byte[256];
+        long[] dayRows = new long[0];
+        for (int day = 0; day < days; day++) {
+            int count = Math.toIntExact(rowsPerDay[day]);
+            if (dayRows.length < count) {
+                dayRows = new long[count];
+            }
+            // 商品を人気に従って選び、その部門の時間帯分布から販売時刻を決めて、1日分を時刻順に並べる
+            for (int i = 0; i < count; i++) {
+                int product = catalog.pickProduct(random);
+                int second = catalog.pickSecondOfDay(product, random);
+                dayRows[i] = ((long) second << PRODUCT_BITS) | product;
+            }
+            Arrays.sort(dayRows, 0, count);
+
+            byte[] datePrefix = (startDate.plusDays(day) + "T").getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < count; i++) {
+                int product = (int) (dayRows[i] & ((1 << PRODUCT_BITS) - 1));
+                int second = (int) (dayRows[i] >>> PRODUCT_BITS);
+                int length = 0;
+                byte[] prefix = catalog.linePrefix[product];
+                System.arraycopy(prefix, 0, line, 0, prefix.length);
+                length += prefix.length;
+                length = writeInt(line, length, pickQuantity(random));
+                line[length++] = ',';
+                length = writeInt(line, length, pickPrice(catalog.prices[product], random));
+                line[length++] = ',';
+                System.arraycopy(datePrefix, 0, line, length, datePrefix.length);
+                length += datePrefix.length;
+                length = writeTwoDigits(line, length, second / 3600);
+                line[length++] = ':';
+                length = writeTwoDigits(line, length, second / 60 % 60);
+                line[length++] = ':';
+                length = writeTwoDigits(line, length, second % 60);
+                line[length++] = '\n';
+                out.write(line, 0, length);
+            }
+        }
+        out.flush();
+    }
+
+    // 曜日の重みに比例して各日の行数を割り振る（合計はちょうど rows）
+    private long[] rowsPerDay(long rows) {
+        double[] weights = new double[days];
+        double total = 0;
+        for (int day = 0; day < days; day++) {
+            DayOfWeek dayOfWeek = startDate.plusDays(day).getDayOfWeek();
+            weights[day] = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY ? weekendFactor : 1.0;
+            total += weights[day];
+        }
+        long[] result = new long[days];
+        long assigned = 0;
+        double cumulative = 0;
+        for (int day = 0; day < days; day++) {
+            cumulative += weights[day];
+            long until = Math.round(rows * (cumulative / total));
+            result[day] = until - assigned;
+            assigned = until;
+        }
+        return result;
+    }
+
+    // 1個が最も多く、個数が増えるほど少なくなる（幾何分布、最大50個）
+    private static int pickQuantity(SplittableRandom random) {
+        int quantity = 1;
+        while (quantity < 50 && random.nextInt(100) < 45) {
+            quantity++;
+        }
+        return quantity;
+    }
+
+    private int pickPrice(int listPrice, SplittableRandom random) {
+        if (random.nextDouble() < discountRate) {
+            return listPrice * (70 + random.nextInt(4) * 5) / 100; // 70〜85%の値引き価格
+        }
+        return listPrice;
+    }
+
+    private static int writeInt(byte[] buf, int pos, int value) {
+        if (value >= 10) {
+            pos = writeInt(buf, pos, value / 10);
+        }
+        buf[pos] = (byte) ('0' + value % 10);
+        return pos + 1;
+    }
+
+    private static int writeTwoDigits(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) ('0' + value / 10);
+        buf[pos + 1] = (byte) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public void setDays(int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("日数は1以上を指定してください: " + days);
+        }
+        this.days = days;
+    }
+
+    public void setZipfExponent(double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+    }
+
+    public void setDiscountRate(double discountRate) {
+        this.discountRate = discountRate;
+    }
+
+    public void setWeekendFactor(double weekendFactor) {
+        this.weekendFactor = weekendFactor;
+    }
+
+    // 商品マスタを展開した表（人気の累積分布と時間帯の累積分布を持つ）
+    private static class Catalog {
+        final byte[][] linePrefix;     // "商品名,カテゴリ," のUTF-8
+        final int[] prices;
+        final int[] department;
+        final double[] popularity;     // 人気の累積分布（商品番号順）
+        final int[][] hourCumulative;  // 部門ごとの時間帯の累積重み
+
+        Catalog(double zipfExponent) {
+            int productCount = 0;
+            for (Object[] department : DEPARTMENTS) {
+                productCount += ((String[][]) department[1]).length;
+            }
+            linePrefix = new byte[productCount][];
+            prices = new int[productCount];
+            department = new int[productCount];
+            hourCumulative = new int[DEPARTMENTS.length][];
+            int index = 0;
+            for (int d = 0; d < DEPARTMENTS.length; d++) {
+                int[] hours = (int[]) DEPARTMENTS[d][0];
+                hourCumulative[d] = new int[hours.length];
+                int sum = 0;
+                for (int h = 0; h < hours.length; h++) {
+                    sum += hours[h];
+                    hourCumulative[d][h] = sum;
+                }
+                for (String[] product : (String[][]) DEPARTMENTS[d][1]) {
+                    linePrefix[index] = (product[1] + "," + product[0] + ",").getBytes(StandardCharsets.UTF_8);
+                    prices[index] = Integer.parseInt(product[2]);
+                    department[index] = d;
+                    index++;
+                }
+            }
+
+            // 人気順位は商品マスタの順序とは無関係にする（固定のシードで並べ替えた順位を使う）
+            int[] rank = new int[productCount];
+            for (int i = 0; i < productCount; i++) {
+                rank[i] = i;
+            }
+            SplittableRandom shuffle = new SplittableRandom(0x5A1E5L);
+            for (int i = productCount - 1; i > 0; i--) {
+                int j = shuffle.nextInt(i + 1);
+                int swap = rank[i];
+                rank[i] = rank[j];
+                rank[j] = swap;
+            }
+            popularity = new double[productCount];
+            double total = 0;
+            for (int i = 0; i < productCount; i++) {
+                total += 1.0 / Math.pow(rank[i] + 1, zipfExponent);
+                popularity[i] = total;
+            }
+            for (int i = 0; i < productCount; i++) {
+                popularity[i] /= total;
+            }
+        }
+
+        int pickProduct(SplittableRandom random) {
+            int index = Arrays.binarySearch(popularity, random.nextDouble());
+            return Math.min(popularity.length - 1, index < 0 ? -index - 1 : index);
+        }
+
+        int pickSecondOfDay(int product, SplittableRandom random) {
+            int[] cumulative = hourCumulative[department[product]];
+            int target = random.nextInt(cumulative[cumulative.length - 1]);
+            int hour = 0;
+            while (cumulative[hour] <= target) {
+                hour++;
+            }
+            return hour * 3600 + random.nextInt(3600);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package kadai0718;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// 販売日で分割した売上データセット
+// ディレクトリ構成:
+//   <root>/_manifest                  パーティションの一覧（ファイル・販売日・行数・日時の範囲）
+//   <root>/date=2024-07-02/part-0     その日の売上（SalesColumnFile形式）。追記のたびに part-1, part-2 ... が増える
+// 期間を指定した読み込みでは、まずマニフェストだけで対象のパーティションを絞り込み、該当するファイルだけを並列に開く。
+// そのため1日分の分析の読み込み量は、履歴全体の長さによらず1日分で済む。
+// 書き込みは1つのプロセスから行うこと（マニフェストは一時ファイルに書いてから置き換える）。
+public class SalesDataset {
+    private static final String MANIFEST = "_manifest";
+    private static final String MANIFEST_HEADER = "file,date,rows,minEpochSecond,maxEpochSecond";
+
+    private final Path root;
+    private final List<Partition> partitions = new ArrayList<>();
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int lastFilesOpened;
+
+    // 1つのパーティション（1日分の1ファイル）
+    public static class Partition {
+        private final String file;     // ルートからの相対パス
+        private final LocalDate date;
+        private final long rows;
+        private final long minEpochSecond;
+        private final long maxEpochSecond;
+
+        Partition(String file, LocalDate date, long rows, long minEpochSecond, long maxEpochSecond) {
+            this.file = file;
+            this.date = date;
+            this.rows = rows;
+            this.minEpochSecond = minEpochSecond;
+            this.maxEpochSecond = maxEpochSecond;
+        }
+
+        public String getFile() { return file; }
+        public LocalDate getDate() { return date; }
+        public long getRows() { return rows; }
+
+        // 期間 [from, to)（エポック秒）と重なるか
+        boolean overlaps(long fromInclusive, long toExclusive) {
+            return maxEpochSecond >= fromInclusive && minEpochSecond < toExclusive;
+        }
+    }
+
+    private SalesDataset(Path root) {
+        this.root = root;
+    }
+
+    // 使い方:
+    //   java kadai0718.SalesDataset import <売上CSV> <ディレクトリ> [不正な行の隔離ファイル]
+    //   java kadai0718.SalesDataset day <ディレクトリ> <日付(yyyy-MM-dd)>
+    public static void main(String[] args) throws IOException {
+        if ((args.length == 3 || args.length == 4) && args[0].equals("import")) {
+            SalesDataset dataset = open(Paths.get(args[2]));
+            try (RejectedRowSink rejections = new RejectedRowSink()) {
+                if (args.length == 4) {
+                    rejections.setQuarantineFile(Paths.get(args[3]));
+                }
+                dataset.append(SalesTable.loadParallel(Paths.get(args[1]), rejections,
+                        rejections.getMaxRejectedPerRange()));
+                rejections.printSummary();
+            }
+            System.out.println(dataset.partitions.size() + "パーティション, " + dataset.getRowCount() + "行");
+        } else if (args.length == 3 && args[0].equals("day")) {
+            SalesDataset dataset = open(Paths.get(args[1]));
+            SalesTable table = dataset.loadDay(LocalDate.parse(args[2]));
+            System.out.println(args[2] + ": " + table.size() + "行 (開いたファイル " + dataset.getLastFilesOpened() + "個)");
+            System.out.println("カテゴリ別総売上: " + table.categoryTotals());
+        } else {
+            System.out.println("使い方: java kadai0718.SalesDataset import <売上CSV> <ディレクトリ> [不正な行の隔離ファイル]");
+            System.out.println("        java kadai0718.SalesDataset day <ディレクトリ> <日付(yyyy-MM-dd)>");
+        }
+    }
+
+    /**
+     * データセットを開く（ディレクトリがなければ空のデータセットとして作る）
+     */
+    public static SalesDataset open(Path root) throws IOException {
+        SalesDataset dataset = new SalesDataset(root);
+        Files.createDirectories(root);
+        Path manifest = root.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+            for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length != 5) {
+                    throw new IOException("マニフェストの形式が不正です: " + line);
+                }
+                dataset.partitions.add(new Partition(parts[0], LocalDate.parse(parts[1]), Long.parseLong(parts[2]),
+                        Long.parseLong(parts[3]), Long.parseLong(parts[4])));
+            }
+        }
+        return dataset;
+    }
+
+    // ===== 書き込み =====
+
+    /**
+     * テーブルの行を販売日ごとに分け、日ごとに新しいパーティションファイルとして追加する
+     */
+    public void append(SalesTable table) throws IOException {
+        SalesTable sorted = SalesColumnFile.sortedByTime(table);
+        long[] seconds = sorted.epochSecondColumn();
+        int start = 0;
+        while (start < sorted.size()) {
+            long day = Math.floorDiv(seconds[start], 86400L);
+            int end = start + 1;
+            while (end < sorted.size() && Math.floorDiv(seconds[end], 86400L) == day) {
+                end++;
+            }
+            LocalDate date = LocalDate.ofEpochDay(day);
+            Path directory = root.resolve("date=" + date);
+            Files.createDirectories(directory);
+            String file = "date=" + date + "/part-" + nextPartNumber(date);
+            SalesColumnFile.write(sorted.slice(start, end), root.resolve(file));
+            partitions.add(new Partition(file, date, end - start, seconds[start], seconds[end - 1]));
+            start = end;
+        }
+        partitions.sort((a, b) -> a.date.compareTo(b.date));
+        writeManifest();
+    }
+
+    private int nextPartNumber(LocalDate date) {
+        int count = 0;
+        for (Partition partition : partitions) {
+            if (partition.date.equals(date)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void writeManifest() throws IOException {
+        Path temporary = root.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            for (Partition p : partitions) {
+                writer.write(p.file + "," + p.date + "," + p.rows + "," + p.minEpochSecond + "," + p.maxEpochSecond);
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, root.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ===== 読み込み =====
+
+    /**
+     * 販売日時が [from, to) の行を読み込む（nullなら制限なし）
+     * マニフェストで対象のパーティションを絞ってから、該当するファイルだけを並列に読む
+     */
+    public SalesTable load(LocalDateTime fromInclusive, LocalDateTime toExclusive) throws IOException {
+        long from = fromInclusive == null ? Long.MIN_VALUE : fromInclusive.toEpochSecond(ZoneOffset.UTC);
+        long to = toExclusive == null ? Long.MAX_VALUE : toExclusive.toEpochSecond(ZoneOffset.UTC);
+        List<Partition> selected = prune(from, to);
+        lastFilesOpened = selected.size();
+
+        SalesColumnFile.ZoneFilter filter = SalesColumnFile.ZoneFilter.all().saleDateTime(fromInclusive, toExclusive);
+        List<ReadTask> tasks = new ArrayList<>();
+        for (Partition partition : selected) {
+            tasks.add(new ReadTask(root.resolve(partition.file), filter));
+        }
+        try {
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<SalesTable> tables = new ArrayList<>(tasks.size());
+        for (ReadTask task : tasks) {
+            tables.add(task.getRawResult());
+        }
+        return SalesTable.concat(tables);
+    }
+
+    public SalesTable loadDay(LocalDate date) throws IOException {
+        return load(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * 期間 [from, to)（エポック秒）と重なるパーティション（ファイルは開かない）
+     */
+    List<Partition> prune(long fromInclusive, long toExclusive) {
+        List<Partition> selected = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.overlaps(fromInclusive, toExclusive)) {
+                selected.add(partition);
+            }
+        }
+        return selected;
+    }
+
+    // 1ファイルを読み込むタスク
+    @SuppressWarnings("serial") // ForkJoinTaskはSerializableだが、タスクを直列化することはない
+    private static class ReadTask extends RecursiveTask<SalesTable> {
+        private final Path file;
+        private final SalesColumnFile.ZoneFilter filter;
+
+        ReadTask(Path file, SalesColumnFile.ZoneFilter filter) {
+            this.file = file;
+            this.filter = filter;
+        }
+
+        @Override
+        protected SalesTable compute() {
+            try (SalesColumnFile.Reader reader = SalesColumnFile.open(file)) {
+                return reader.read(filter);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public List<Partition> getPartitions() { return Collections.unmodifiableList(partitions); }
+
+    public long getRowCount() {
+        return partitions.stream().mapToLong(Partition::getRows).sum();
+    }
+
+    // 直前の読み込みで開いたファイルの数
+    public int getLastFilesOpened() { return lastFilesOpened; }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+}
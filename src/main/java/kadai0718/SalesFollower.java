@@ -0,0 +1,325 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 追記され続ける売上CSVを追跡し、集計を差分更新するフォローモード
+// 前回読んだ位置から後ろの完全な行だけを解析するため、1回の更新コストは新しく追記された行数にだけ比例する。
+// 集計はこのクラスのスレッドだけが更新し、読み手には更新のたびに作り直した不変のスナップショットを渡す
+// （読み手は取り込みを止めずに、いつでも矛盾のない集計を参照できる）。
+public class SalesFollower implements Runnable, AutoCloseable {
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final long bucketSeconds;    // 時間帯集計の幅（秒）
+    private volatile boolean running = true;
+    private volatile Snapshot snapshot;
+    private long pollIntervalMillis = 200;
+
+    // 読み込み位置と行の途中の持ち越し
+    private final SalesCsvReader reader = new SalesCsvReader();
+    private long position;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int filled;
+
+    // 集計（取り込みスレッドだけが更新する）
+    private StringDictionary categories;
+    private StringDictionary products;
+    private long[] categoryRevenue = new long[16];
+    private long[] productRevenue = new long[64];
+    private long[] productQuantity = new long[64];
+    private LongGroupBy buckets = new LongGroupBy();
+    private long rowCount;
+    private long rejectedCount;
+    private volatile RejectedRowSink rejections; // 不正な行の件数と見本（作り直すまで同じものを使う）
+    private final Ingest ingest = new Ingest();
+
+    /**
+     * @param file          追跡する売上CSV（ファイル先頭から取り込み、以降は追記分を取り込む）
+     * @param bucketSeconds 時間帯集計の幅（例: 3600なら1時間ごと）
+     */
+    public SalesFollower(Path file, long bucketSeconds) {
+        if (bucketSeconds <= 0) {
+            throw new IllegalArgumentException("時間帯の幅は1秒以上を指定してください: " + bucketSeconds);
+        }
+        this.file = file;
+        this.bucketSeconds = bucketSeconds;
+        reset();
+    }
+
+    // 使い方: java kadai0718.SalesFollower <売上CSV> [表示間隔(秒)]
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("使い方: java kadai0718.SalesFollower <売上CSV> [表示間隔(秒)]");
+            return;
+        }
+        long printInterval = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        try (SalesFollower follower = new SalesFollower(Paths.get(args[0]), 3600)) {
+            Thread thread = new Thread(follower, "sales-follower");
+            thread.setDaemon(true);
+            thread.start();
+            System.out.println("売上ファイルの追跡を開始: " + args[0]);
+            try {
+                while (thread.isAlive()) {
+                    Thread.sleep(printInterval * 1000);
+                    follower.snapshot().print(5);
+                }
+            } finally {
+                follower.getRejections().printSummary();
+            }
+        }
+    }
+
+    /**
+     * close() が呼ばれるまで追記を監視し続ける
+     */
+    @Override
+    public void run() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                poll();
+            } catch (IOException e) {
+                System.err.println("売上ファイルの読み込みに失敗しました: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // 想定外の例外で取り込みスレッドを止めない。集計が途中まで反映されている可能性があるので最初から集計し直す
+                System.err.println("売上ファイルの取り込み中にエラーが発生したため、最初から集計し直します: " + e);
+                reset();
+            }
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 前回の位置から後ろに追記された完全な行を取り込み、スナップショットを更新する
+     *
+     * @return 今回取り込んだ行数（解析に失敗した行を含む）
+     */
+    public long poll() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long linesBefore;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < position) {
+                // ファイルが切り詰められた／作り直された（日替わりなど）ので最初から集計し直す
+                reset();
+            }
+            linesBefore = reader.getLineNumber();
+            while (true) {
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2); // バッファより長い行
+                }
+                int n = channel.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled), position);
+                if (n <= 0) {
+                    break;
+                }
+                boolean firstChunk = position == 0;
+                position += n;
+                filled += n;
+                int start = firstChunk && filled >= 3 ? SalesCsvReader.skipBom(buffer, filled) : 0;
+                // 改行で終わっていない最後の行は書き込み途中かもしれないので次回に持ち越す
+                int consumed = reader.parse(buffer, start, filled, false, ingest);
+                filled -= consumed;
+                System.arraycopy(buffer, consumed, buffer, 0, filled);
+            }
+        }
+        long lines = reader.getLineNumber() - linesBefore;
+        if (lines > 0) {
+            snapshot = createSnapshot();
+        }
+        return lines;
+    }
+
+    private void reset() {
+        reader.reset(0, 1); // ヘッダー行を読み飛ばす
+        position = 0;
+        filled = 0;
+        categories = new StringDictionary();
+        products = new StringDictionary();
+        Arrays.fill(categoryRevenue, 0);
+        Arrays.fill(productRevenue, 0);
+        Arrays.fill(productQuantity, 0);
+        buckets = new LongGroupBy();
+        rowCount = 0;
+        rejectedCount = 0;
+        rejections = new RejectedRowSink();
+        snapshot = createSnapshot();
+    }
+
+    // 解析した行を集計に加えるハンドラー
+    private class Ingest implements SaleRowHandler {
+        @Override
+        public void onRow(long lineNumber, String productName, String category, int quantity, int unitPrice, long epochSecond) {
+            // 集計に反映できない行は、どの集計も更新する前に不正な行として除外する（例外で取り込みスレッドを止めない）
+            long bucket = Math.floorDiv(epochSecond, bucketSeconds);
+            if (bucket < Integer.MIN_VALUE || bucket > Integer.MAX_VALUE) {
+                // 時間帯のキーはintなので、幅が狭すぎて範囲を超える日時は集計できない
+                onError(lineNumber, SalesCsvReader.ParseError.DATE_TIME,
+                        describe(productName, category, quantity, unitPrice, epochSecond) + " (時間帯の範囲外)");
+                return;
+            }
+            long amount = (long) quantity * unitPrice;
+            int categoryId = categories.intern(category);
+            if (categoryId >= categoryRevenue.length) {
+                categoryRevenue = Arrays.copyOf(categoryRevenue, categoryRevenue.length * 2);
+            }
+            int productId = products.intern(productName);
+            if (productId >= productRevenue.length) {
+                productRevenue = Arrays.copyOf(productRevenue, productRevenue.length * 2);
+                productQuantity = Arrays.copyOf(productQuantity, productQuantity.length * 2);
+            }
+            long categoryTotal;
+            long productTotal;
+            try {
+                categoryTotal = Math.addExact(categoryRevenue[categoryId], amount);
+                productTotal = Math.addExact(productRevenue[productId], amount);
+            } catch (ArithmeticException e) {
+                onError(lineNumber, SalesCsvReader.ParseError.NUMBER_FORMAT,
+                        describe(productName, category, quantity, unitPrice, epochSecond) + " (売上合計がlongの範囲を超えます)");
+                return;
+            }
+            categoryRevenue[categoryId] = categoryTotal;
+            productRevenue[productId] = productTotal;
+            productQuantity[productId] += quantity;
+
+            buckets.add((int) bucket, amount);
+            rowCount++;
+        }
+
+        // 解析済みの値から元の行に近い形を組み立てる（集計できなかった行の見本用）
+        private String describe(String productName, String category, int quantity, int unitPrice, long epochSecond) {
+            return productName + "," + category + "," + quantity + "," + unitPrice + "," + epochSecond;
+        }
+
+        @Override
+        public void onError(long lineNumber, SalesCsvReader.ParseError error, String rawLine) {
+            rejectedCount++;
+            rejections.report(lineNumber, error, rawLine);
+        }
+    }
+
+    // 現在の集計を複製する。コストは行数ではなくカテゴリ・商品・時間帯の数に比例する
+    private Snapshot createSnapshot() {
+        Map<String, Long> categoryTotals = new LinkedHashMap<>();
+        for (int id = 0; id < categories.size(); id++) {
+            categoryTotals.put(categories.valueOf(id), categoryRevenue[id]);
+        }
+        int productCount = products.size();
+        String[] productNames = new String[productCount];
+        for (int id = 0; id < productCount; id++) {
+            productNames[id] = products.valueOf(id);
+        }
+        Map<LocalDateTime, Long> bucketTotals = new LinkedHashMap<>();
+        for (int key : buckets.keys()) {
+            bucketTotals.put(LocalDateTime.ofEpochSecond(key * bucketSeconds, 0, ZoneOffset.UTC), buckets.getSum(key));
+        }
+        return new Snapshot(rowCount, rejectedCount, position - filled, Collections.unmodifiableMap(categoryTotals),
+                productNames, Arrays.copyOf(productRevenue, productCount), Arrays.copyOf(productQuantity, productCount),
+                Collections.unmodifiableMap(bucketTotals));
+    }
+
+    /**
+     * 不正な行の件数と見本（どのスレッドからでも呼び出せる。ファイルが作り直されたら新しくなる）
+     */
+    public RejectedRowSink getRejections() {
+        return rejections;
+    }
+
+    /**
+     * 最新のスナップショット（どのスレッドからでも呼び出せる）
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+    }
+
+    // ある時点の集計結果（不変）
+    public static class Snapshot {
+        private final long rowCount;
+        private final long rejectedCount;
+        private final long bytesConsumed;
+        private final Map<String, Long> categoryTotals;
+        private final String[] productNames;
+        private final long[] productRevenue;
+        private final long[] productQuantity;
+        private final Map<LocalDateTime, Long> bucketTotals;
+
+        Snapshot(long rowCount, long rejectedCount, long bytesConsumed, Map<String, Long> categoryTotals,
+                 String[] productNames, long[] productRevenue, long[] productQuantity,
+                 Map<LocalDateTime, Long> bucketTotals) {
+            this.rowCount = rowCount;
+            this.rejectedCount = rejectedCount;
+            this.bytesConsumed = bytesConsumed;
+            this.categoryTotals = categoryTotals;
+            this.productNames = productNames;
+            this.productRevenue = productRevenue;
+            this.productQuantity = productQuantity;
+            this.bucketTotals = bucketTotals;
+        }
+
+        public long getRowCount() { return rowCount; }
+        public long getRejectedCount() { return rejectedCount; }
+        // 取り込み済みのバイト数（ファイル先頭から、持ち越し中の行の途中は含まない）
+        public long getBytesConsumed() { return bytesConsumed; }
+        public Map<String, Long> getCategoryTotals() { return categoryTotals; }
+        // 時間帯の開始日時ごとの売上金額（古い順）
+        public Map<LocalDateTime, Long> getBucketTotals() { return bucketTotals; }
+
+        /**
+         * 売上金額の多い順に上位n件の商品（同額なら最初に現れた商品が先）
+         */
+        public Map<String, Long> topProducts(int n) {
+            List<Integer> ids = new ArrayList<>(productNames.length);
+            for (int id = 0; id < productNames.length; id++) {
+                ids.add(id);
+            }
+            ids.sort((a, b) -> Long.compare(productRevenue[b], productRevenue[a]));
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (int id : ids.subList(0, Math.min(n, ids.size()))) {
+                result.put(productNames[id], productRevenue[id]);
+            }
+            return result;
+        }
+
+        public long getProductQuantity(String productName) {
+            for (int id = 0; id < productNames.length; id++) {
+                if (productNames[id].equals(productName)) {
+                    return productQuantity[id];
+                }
+            }
+            return 0;
+        }
+
+        public void print(int topN) {
+            System.out.println("--- 売上スナップショット (" + rowCount + "件, スキップ " + rejectedCount + "件) ---");
+            categoryTotals.forEach((category, total) -> System.out.println(category + ": " + total + "円"));
+            System.out.println("上位" + topN + "商品:");
+            topProducts(topN).forEach((product, total) -> System.out.println("  " + product + ": " + total + "円"));
+        }
+    }
+}
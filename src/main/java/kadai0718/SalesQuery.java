@@ -0,0 +1,597 @@
+package kadai0718;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// 列指向テーブルに対する小さな問い合わせエンジン
+// 絞り込み・列の選択・グループ集計・並べ替え・件数制限をメソッドチェーンで組み立てる。
+// 実行は BATCH_SIZE 行ずつ、プリミティブ配列の列と「条件に合う行番号の配列」（選択ベクトル）で行い、
+// 1行ごとにオブジェクトを作らない。結果の行だけを表示用の値に変換する。
+//
+// 例: 2024年7月以降、カテゴリ別の売上金額を多い順に
+//   SalesQuery.from(table)
+//       .whereSaleDateTime(LocalDateTime.of(2024, 7, 1, 0, 0), null)
+//       .groupBy(Column.CATEGORY, Column.AMOUNT)
+//       .orderBy("sum", true)
+//       .execute().print();
+public class SalesQuery {
+    static final int BATCH_SIZE = 1024;
+
+    // 問い合わせで参照できる列
+    public enum Column {
+        PRODUCT("product"),
+        CATEGORY("category"),
+        QUANTITY("quantity"),
+        UNIT_PRICE("unit_price"),
+        SALE_DATE_TIME("sale_date_time"),
+        DAY("day"),                // 販売日
+        AMOUNT("amount");          // 売上金額（個数×単価）
+
+        private final String label;
+
+        Column(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+    }
+
+    private final SalesTable table;
+    private final List<Filter> filters = new ArrayList<>();
+    private Column[] projection = Column.values();
+    private boolean grouped;
+    private Column groupKey;       // nullなら全体を1グループとして集計
+    private Column groupValue;
+    private String orderBy;
+    private boolean descending;
+    private int limit = Integer.MAX_VALUE;
+
+    private SalesQuery(SalesTable table) {
+        this.table = table;
+    }
+
+    public static SalesQuery from(SalesTable table) {
+        return new SalesQuery(table);
+    }
+
+    // ===== 絞り込み（複数指定した場合はすべてを満たす行） =====
+
+    public SalesQuery whereCategory(String category) {
+        int id = table.getCategories().idOf(category); // 存在しなければ-1となり、どの行にも一致しない
+        filters.add(new IntRangeFilter(table.categoryIdColumn(), id, id));
+        return this;
+    }
+
+    public SalesQuery whereProduct(String productName) {
+        int id = table.getProducts().idOf(productName);
+        filters.add(new IntRangeFilter(table.productIdColumn(), id, id));
+        return this;
+    }
+
+    // 売上個数 [min, max]
+    public SalesQuery whereQuantityBetween(int min, int max) {
+        filters.add(new IntRangeFilter(table.quantityColumn(), min, max));
+        return this;
+    }
+
+    // 単価 [min, max]
+    public SalesQuery whereUnitPriceBetween(int min, int max) {
+        filters.add(new IntRangeFilter(table.unitPriceColumn(), min, max));
+        return this;
+    }
+
+    // 販売日時 [from, to)。nullなら制限なし
+    public SalesQuery whereSaleDateTime(LocalDateTime fromInclusive, LocalDateTime toExclusive) {
+        long min = fromInclusive == null ? Long.MIN_VALUE : fromInclusive.toEpochSecond(ZoneOffset.UTC);
+        long max = toExclusive == null ? Long.MAX_VALUE : toExclusive.toEpochSecond(ZoneOffset.UTC) - 1;
+        filters.add(new EpochRangeFilter(table.epochSecondColumn(), min, max));
+        return this;
+    }
+
+    // 売上金額 [min, max]
+    public SalesQuery whereAmountBetween(long min, long max) {
+        filters.add(new AmountRangeFilter(table.quantityColumn(), table.unitPriceColumn(), min, max));
+        return this;
+    }
+
+    // ===== 出力の形 =====
+
+    /**
+     * 出力する列を指定する（グループ集計しない場合）
+     */
+    public SalesQuery select(Column... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("列を1つ以上指定してください");
+        }
+        projection = columns.clone();
+        return this;
+    }
+
+    /**
+     * keyの値ごとに、valueの件数・合計・最小・最大・平均を求める
+     * 出力列は key, count, sum, min, max, avg
+     */
+    public SalesQuery groupBy(Column key, Column value) {
+        checkNumeric(value);
+        grouped = true;
+        groupKey = key;
+        groupValue = value;
+        return this;
+    }
+
+    /**
+     * 条件に合う全行のvalueの件数・合計・最小・最大・平均を求める（出力は1行）
+     */
+    public SalesQuery aggregate(Column value) {
+        checkNumeric(value);
+        grouped = true;
+        groupKey = null;
+        groupValue = value;
+        return this;
+    }
+
+    /**
+     * 出力列の名前で並べ替える（同じ値の行は元の順序を保つ）
+     */
+    public SalesQuery orderBy(String columnName, boolean descending) {
+        this.orderBy = columnName;
+        this.descending = descending;
+        return this;
+    }
+
+    public SalesQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("件数は0以上を指定してください: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    private static void checkNumeric(Column value) {
+        if (value != Column.QUANTITY && value != Column.UNIT_PRICE && value != Column.AMOUNT) {
+            throw new IllegalArgumentException("集計できるのは数値の列だけです: " + value.getLabel());
+        }
+    }
+
+    // ===== 実行 =====
+
+    public QueryResult execute() {
+        return grouped ? executeGrouped() : executeSelect();
+    }
+
+    /**
+     * 条件に合う行を選択ベクトルにまとめながら、バッチごとにconsumerへ渡す
+     * 絞り込み条件がなければ選択ベクトルを作らず（null）、バッチの先頭行 start から count 行が連続していることを表す
+     *
+     * @return 条件に合った行数
+     */
+    private long scan(BatchConsumer consumer) {
+        int[] selection = new int[BATCH_SIZE];
+        long matched = 0;
+        for (int start = 0; start < table.size(); start += BATCH_SIZE) {
+            int end = Math.min(table.size(), start + BATCH_SIZE);
+            if (filters.isEmpty()) {
+                consumer.accept(start, null, end - start);
+                matched += end - start;
+                continue;
+            }
+            int count = filters.get(0).first(start, end, selection);
+            for (int f = 1; f < filters.size() && count > 0; f++) {
+                count = filters.get(f).refine(selection, count);
+            }
+            if (count > 0) {
+                consumer.accept(start, selection, count);
+                matched += count;
+            }
+        }
+        return matched;
+    }
+
+    @FunctionalInterface
+    private interface BatchConsumer {
+        void accept(int start, int[] selection, int count);
+    }
+
+    private QueryResult executeSelect() {
+        int[][] rows = {new int[1024]};
+        int[] size = {0};
+        long matched = scan((start, selection, count) -> {
+            if (size[0] + count > rows[0].length) {
+                rows[0] = Arrays.copyOf(rows[0], Math.max(size[0] + count, rows[0].length * 2));
+            }
+            for (int i = 0; i < count; i++) {
+                rows[0][size[0] + i] = selection == null ? start + i : selection[i];
+            }
+            size[0] += count;
+        });
+        int[] selected = rows[0];
+        int n = size[0];
+        if (orderBy != null) {
+            Column column = columnNamed(orderBy, projection);
+            long[] keys = new long[n];
+            int[] rank = rankOf(column);
+            for (int i = 0; i < n; i++) {
+                long key = sortKey(column, selected[i], rank);
+                keys[i] = descending ? ~key : key; // ビット反転で大小を逆にする（符号反転と違い桁あふれしない）
+            }
+            LongKeySort.sort(keys, selected, n);
+        }
+        n = Math.min(n, limit);
+
+        List<String> names = new ArrayList<>();
+        for (Column column : projection) {
+            names.add(column.getLabel());
+        }
+        List<Object[]> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Object[] row = new Object[projection.length];
+            for (int c = 0; c < projection.length; c++) {
+                row[c] = valueOf(projection[c], selected[i]);
+            }
+            result.add(row);
+        }
+        return new QueryResult(names, result, table.size(), matched);
+    }
+
+    private QueryResult executeGrouped() {
+        // 辞書IDのキーは密なので配列で、それ以外のキーはハッシュ表で集計する
+        boolean dense = groupKey == null || groupKey == Column.CATEGORY || groupKey == Column.PRODUCT;
+        int groups = groupKey == null ? 1
+                : groupKey == Column.CATEGORY ? table.getCategories().size()
+                : groupKey == Column.PRODUCT ? table.getProducts().size() : 0;
+        long[] sums = new long[groups];
+        long[] counts = new long[groups];
+        long[] mins = new long[groups];
+        long[] maxs = new long[groups];
+        Arrays.fill(mins, Long.MAX_VALUE);
+        Arrays.fill(maxs, Long.MIN_VALUE);
+        LongGroupBy hashGroups = dense ? null : new LongGroupBy();
+        long[] values = new long[BATCH_SIZE];
+        int[] keys = new int[BATCH_SIZE];
+
+        long matched = scan((start, selection, count) -> {
+            loadValues(groupValue, start, selection, count, values);
+            if (groupKey == null) {
+                long sum = sums[0];
+                long min = mins[0];
+                long max = maxs[0];
+                for (int i = 0; i < count; i++) {
+                    long value = values[i];
+                    sum = Math.addExact(sum, value);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                sums[0] = sum;
+                mins[0] = min;
+                maxs[0] = max;
+                counts[0] += count;
+                return;
+            }
+            loadKeys(groupKey, start, selection, count, keys);
+            if (dense) {
+                for (int i = 0; i < count; i++) {
+                    int key = keys[i];
+                    long value = values[i];
+                    sums[key] = Math.addExact(sums[key], value);
+                    counts[key]++;
+                    mins[key] = Math.min(mins[key], value);
+                    maxs[key] = Math.max(maxs[key], value);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    hashGroups.add(keys[i], values[i]);
+                }
+            }
+        });
+
+        List<Object[]> result = new ArrayList<>();
+        if (dense) {
+            for (int key = 0; key < groups; key++) {
+                if (counts[key] > 0 || groupKey == null) {
+                    result.add(groupRow(key, counts[key], sums[key], mins[key], maxs[key]));
+                }
+            }
+        } else {
+            for (int key : hashGroups.keys()) {
+                result.add(groupRow(key, hashGroups.getCount(key), hashGroups.getSum(key), hashGroups.getMin(key), hashGroups.getMax(key)));
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        if (groupKey != null) {
+            names.add(groupKey.getLabel());
+        }
+        names.addAll(List.of("count", "sum", "min", "max", "avg"));
+        if (orderBy != null) {
+            int index = names.indexOf(orderBy);
+            if (index < 0) {
+                throw new IllegalArgumentException("出力にない列では並べ替えできません: " + orderBy);
+            }
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Comparator<Object[]> comparator = Comparator.comparing(row -> (Comparable) row[index]);
+            result.sort(descending ? comparator.reversed() : comparator);
+        }
+        if (result.size() > limit) {
+            result = new ArrayList<>(result.subList(0, limit));
+        }
+        return new QueryResult(names, result, table.size(), matched);
+    }
+
+    private Object[] groupRow(int key, long count, long sum, long min, long max) {
+        if (count == 0) {
+            return new Object[]{0L, 0L, null, null, null}; // 条件に合う行がない場合の全体集計
+        }
+        double average = (double) sum / count;
+        if (groupKey == null) {
+            return new Object[]{count, sum, min, max, average};
+        }
+        return new Object[]{keyValue(groupKey, key), count, sum, min, max, average};
+    }
+
+    // 選択された行の集計値をvaluesに詰める
+    private void loadValues(Column column, int start, int[] selection, int count, long[] values) {
+        int[] quantities = table.quantityColumn();
+        int[] unitPrices = table.unitPriceColumn();
+        if (selection == null) {
+            // 連続した行: 添字の間接参照がないので単純なループになる
+            switch (column) {
+                case QUANTITY -> {
+                    for (int i = 0; i < count; i++) {
+                        values[i] = quantities[start + i];
+                    }
+                }
+                case UNIT_PRICE -> {
+                    for (int i = 0; i < count; i++) {
+                        values[i] = unitPrices[start + i];
+                    }
+                }
+                default -> {
+                    for (int i = 0; i < count; i++) {
+                        values[i] = (long) quantities[start + i] * unitPrices[start + i];
+                    }
+                }
+            }
+            return;
+        }
+        switch (column) {
+            case QUANTITY -> {
+                for (int i = 0; i < count; i++) {
+                    values[i] = quantities[selection[i]];
+                }
+            }
+            case UNIT_PRICE -> {
+                for (int i = 0; i < count; i++) {
+                    values[i] = unitPrices[selection[i]];
+                }
+            }
+            default -> {
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    values[i] = (long) quantities[row] * unitPrices[row];
+                }
+            }
+        }
+    }
+
+    // 選択された行のグループキーをkeysに詰める
+    private void loadKeys(Column column, int start, int[] selection, int count, int[] keys) {
+        switch (column) {
+            case PRODUCT -> gather(table.productIdColumn(), start, selection, count, keys);
+            case CATEGORY -> gather(table.categoryIdColumn(), start, selection, count, keys);
+            case QUANTITY -> gather(table.quantityColumn(), start, selection, count, keys);
+            case UNIT_PRICE -> gather(table.unitPriceColumn(), start, selection, count, keys);
+            case DAY -> {
+                long[] seconds = table.epochSecondColumn();
+                for (int i = 0; i < count; i++) {
+                    long second = selection == null ? seconds[start + i] : seconds[selection[i]];
+                    keys[i] = Math.toIntExact(Math.floorDiv(second, 86400L));
+                }
+            }
+            default -> throw new IllegalArgumentException("この列ではグループ化できません: " + column.getLabel());
+        }
+    }
+
+    private static void gather(int[] column, int start, int[] selection, int count, int[] out) {
+        if (selection == null) {
+            System.arraycopy(column, start, out, 0, count);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            out[i] = column[selection[i]];
+        }
+    }
+
+    // グループキー（int）を表示用の値に変換する
+    private Object keyValue(Column column, int key) {
+        return switch (column) {
+            case PRODUCT -> table.getProducts().valueOf(key);
+            case CATEGORY -> table.getCategories().valueOf(key);
+            case DAY -> LocalDate.ofEpochDay(key);
+            default -> key;
+        };
+    }
+
+    // 1行の列の値を表示用の値に変換する
+    private Object valueOf(Column column, int row) {
+        return switch (column) {
+            case PRODUCT -> table.getProducts().valueOf(table.productIdColumn()[row]);
+            case CATEGORY -> table.getCategories().valueOf(table.categoryIdColumn()[row]);
+            case QUANTITY -> table.quantityColumn()[row];
+            case UNIT_PRICE -> table.unitPriceColumn()[row];
+            case SALE_DATE_TIME -> LocalDateTime.ofEpochSecond(table.epochSecondColumn()[row], 0, ZoneOffset.UTC);
+            case DAY -> LocalDate.ofEpochDay(Math.floorDiv(table.epochSecondColumn()[row], 86400L));
+            case AMOUNT -> (long) table.quantityColumn()[row] * table.unitPriceColumn()[row];
+        };
+    }
+
+    // 並べ替えのキー（文字列の列は辞書IDを名前順の順位に置き換える）
+    private long sortKey(Column column, int row, int[] rank) {
+        return switch (column) {
+            case PRODUCT -> rank[table.productIdColumn()[row]];
+            case CATEGORY -> rank[table.categoryIdColumn()[row]];
+            case QUANTITY -> table.quantityColumn()[row];
+            case UNIT_PRICE -> table.unitPriceColumn()[row];
+            case SALE_DATE_TIME, DAY -> table.epochSecondColumn()[row];
+            case AMOUNT -> (long) table.quantityColumn()[row] * table.unitPriceColumn()[row];
+        };
+    }
+
+    private int[] rankOf(Column column) {
+        StringDictionary dictionary = column == Column.PRODUCT ? table.getProducts()
+                : column == Column.CATEGORY ? table.getCategories() : null;
+        if (dictionary == null) {
+            return null;
+        }
+        Integer[] ids = new Integer[dictionary.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, Comparator.comparing(dictionary::valueOf));
+        int[] rank = new int[ids.length];
+        for (int r = 0; r < ids.length; r++) {
+            rank[ids[r]] = r;
+        }
+        return rank;
+    }
+
+    private static Column columnNamed(String name, Column[] columns) {
+        for (Column column : columns) {
+            if (column.getLabel().equals(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("出力にない列では並べ替えできません: " + name);
+    }
+
+    // ===== 絞り込み条件 =====
+    // first はバッチ [start, end) から条件に合う行番号を selection に書き、refine は selection をさらに絞り込む。
+    // 条件の真偽で書き込み位置を進めるだけにして、ループ内の分岐を避けている。
+
+    private abstract static class Filter {
+        abstract boolean test(int row);
+
+        int first(int start, int end, int[] selection) {
+            int count = 0;
+            for (int row = start; row < end; row++) {
+                selection[count] = row;
+                count += test(row) ? 1 : 0;
+            }
+            return count;
+        }
+
+        int refine(int[] selection, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                selection[kept] = row;
+                kept += test(row) ? 1 : 0;
+            }
+            return kept;
+        }
+    }
+
+    private static class IntRangeFilter extends Filter {
+        private final int[] column;
+        private final int min;
+        private final int max;
+
+        IntRangeFilter(int[] column, int min, int max) {
+            this.column = column;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        boolean test(int row) {
+            int value = column[row];
+            return value >= min && value <= max;
+        }
+    }
+
+    private static class EpochRangeFilter extends Filter {
+        private final long[] column;
+        private final long min;
+        private final long max;
+
+        EpochRangeFilter(long[] column, long min, long max) {
+            this.column = column;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        boolean test(int row) {
+            long value = column[row];
+            return value >= min && value <= max;
+        }
+    }
+
+    private static class AmountRangeFilter extends Filter {
+        private final int[] quantities;
+        private final int[] unitPrices;
+        private final long min;
+        private final long max;
+
+        AmountRangeFilter(int[] quantities, int[] unitPrices, long min, long max) {
+            this.quantities = quantities;
+            this.unitPrices = unitPrices;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        boolean test(int row) {
+            long value = (long) quantities[row] * unitPrices[row];
+            return value >= min && value <= max;
+        }
+    }
+
+    // ===== 結果 =====
+
+    public static class QueryResult {
+        private final List<String> columnNames;
+        private final List<Object[]> rows;
+        private final long rowsScanned;
+        private final long rowsMatched;
+
+        QueryResult(List<String> columnNames, List<Object[]> rows, long rowsScanned, long rowsMatched) {
+            this.columnNames = List.copyOf(columnNames);
+            this.rows = rows;
+            this.rowsScanned = rowsScanned;
+            this.rowsMatched = rowsMatched;
+        }
+
+        public List<String> getColumnNames() { return columnNames; }
+        public List<Object[]> getRows() { return rows; }
+        public long getRowsScanned() { return rowsScanned; }
+        // 絞り込み条件に合った行数（件数制限の前）
+        public long getRowsMatched() { return rowsMatched; }
+
+        public Object get(int row, String columnName) {
+            int index = columnNames.indexOf(columnName);
+            if (index < 0) {
+                throw new IllegalArgumentException("列がありません: " + columnName);
+            }
+            return rows.get(row)[index];
+        }
+
+        public void print() {
+            System.out.println(String.join(" | ", columnNames));
+            for (Object[] row : rows) {
+                StringBuilder line = new StringBuilder();
+                for (int c = 0; c < row.length; c++) {
+                    if (c > 0) {
+                        line.append(" | ");
+                    }
+                    line.append(row[c]);
+                }
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 売上データの列指向テーブル
+// 1行をオブジェクトにせず、列ごとのプリミティブ配列で保持する。商品名・カテゴリは辞書符号化したint ID。
+// 1行あたり int×4 + long×1 = 24バイトで、SaleRecord（文字列参照・LocalDateTimeを含む）より大幅に小さい。
+public class SalesTable {
+    private final StringDictionary products;
+    private final StringDictionary categories;
+    private final int[] productIds;
+    private final int[] categoryIds;
+    private final int[] quantities;
+    private final int[] unitPrices;
+    private final long[] epochSeconds;   // 販売日時（UTCとみなしたエポック秒）
+    private final int size;
+
+    private SalesTable(StringDictionary products, StringDictionary categories, int[] productIds, int[] categoryIds,
+                       int[] quantities, int[] unitPrices, long[] epochSeconds, int size) {
+        this.products = products;
+        this.categories = categories;
+        this.productIds = productIds;
+        this.categoryIds = categoryIds;
+        this.quantities = quantities;
+        this.unitPrices = unitPrices;
+        this.epochSeconds = epochSeconds;
+        this.size = size;
+    }
+
+    // ===== 生成 =====
+
+    /**
+     * 符号化済みの列からテーブルを作る（ファイル形式の読み込みなどで使用。配列はそのまま保持する）
+     */
+    static SalesTable of(StringDictionary products, StringDictionary categories, int[] productIds, int[] categoryIds,
+                         int[] quantities, int[] unitPrices, long[] epochSeconds, int size) {
+        return new SalesTable(products, categories, productIds, categoryIds, quantities, unitPrices, epochSeconds, size);
+    }
+
+    // 行範囲 [from, to) を切り出したテーブル（辞書は共有する）
+    SalesTable slice(int from, int to) {
+        return new SalesTable(products, categories, Arrays.copyOfRange(productIds, from, to),
+                Arrays.copyOfRange(categoryIds, from, to), Arrays.copyOfRange(quantities, from, to),
+                Arrays.copyOfRange(unitPrices, from, to), Arrays.copyOfRange(epochSeconds, from, to), to - from);
+    }
+
+    /**
+     * CSVファイルを高速リーダーで読み込んでテーブルを作る（不正な行は件数と見本をまとめて標準エラーに出す）
+     */
+    public static SalesTable load(Path file) throws IOException {
+        RejectedRowSink rejections = new RejectedRowSink();
+        SalesTable table = load(file, rejections);
+        rejections.printSummary();
+        return table;
+    }
+
+    /**
+     * CSVファイルを高速リーダーで読み込んでテーブルを作る（不正な行はerrorsへ通知する）
+     */
+    public static SalesTable load(Path file, ParallelSalesLoader.ErrorReporter errors) throws IOException {
+        Builder builder = new Builder();
+        SalesCsvReader.read(file, new SaleRowHandler() {
+            @Override
+            public void onRow(long lineNumber, String productName, String category,
+                              int quantity, int unitPrice, long epochSecond) {
+                builder.add(productName, category, quantity, unitPrice, epochSecond);
+            }
+
+            @Override
+            public void onError(long lineNumber, SalesCsvReader.ParseError error, String rawLine) {
+                errors.report(lineNumber, error, rawLine);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * CSVファイルを並列に読み込み、範囲ごとのテーブルをファイル順に連結する
+     */
+    public static SalesTable loadParallel(Path file, ParallelSalesLoader.ErrorReporter errors) throws IOException {
+        return loadParallel(file, errors, ParallelSalesLoader.DEFAULT_MAX_REJECTED_PER_RANGE);
+    }
+
+    /**
+     * CSVファイルを並列に読み込む（不正な行の内容を範囲ごとにmaxRejectedPerRange件まで保持して通知する）
+     *
+     * @param maxRejectedPerRange 範囲ごとに内容を保持する不正な行の上限（超えた分は件数だけをreportOmittedで通知する）
+     */
+    public static SalesTable loadParallel(Path file, ParallelSalesLoader.ErrorReporter errors, int maxRejectedPerRange)
+            throws IOException {
+        ParallelSalesLoader loader = new ParallelSalesLoader();
+        loader.setMaxRejectedPerRange(maxRejectedPerRange);
+        List<Builder> chunks = loader.loadChunks(file, true, Builder::new, errors);
+        return concat(chunks.stream().map(Builder::build).toList());
+    }
+
+    public static SalesTable fromRecords(List<SaleRecord> records) {
+        Builder builder = new Builder();
+        for (SaleRecord r : records) {
+            builder.add(r.getProductName(), r.getCategory(), r.getQuantity(), r.getUnitPrice(),
+                    r.getSaleDateTime().toEpochSecond(ZoneOffset.UTC));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 複数のテーブルを連結する（辞書は1つにまとめ、IDを振り直す）
+     */
+    public static SalesTable concat(List<SalesTable> tables) {
+        Builder builder = new Builder();
+        for (SalesTable table : tables) {
+            int[] productMap = new int[table.products.size()];
+            for (int id = 0; id < productMap.length; id++) {
+                productMap[id] = builder.products.intern(table.products.valueOf(id));
+            }
+            int[] categoryMap = new int[table.categories.size()];
+            for (int id = 0; id < categoryMap.length; id++) {
+                categoryMap[id] = builder.categories.intern(table.categories.valueOf(id));
+            }
+            builder.ensureCapacity(builder.size + table.size);
+            for (int row = 0; row < table.size; row++) {
+                builder.addEncoded(productMap[table.productIds[row]], categoryMap[table.categoryIds[row]],
+                        table.quantities[row], table.unitPrices[row], table.epochSeconds[row]);
+            }
+        }
+        return builder.build();
+    }
+
+    // 行を追加しながら列を伸ばすビルダー。SaleRowHandlerとしてCSVリーダーに直接渡せる
+    public static class Builder implements SaleRowHandler {
+        private final StringDictionary products = new StringDictionary();
+        private final StringDictionary categories = new StringDictionary();
+        private int[] productIds = new int[1024];
+        private int[] categoryIds = new int[1024];
+        private int[] quantities = new int[1024];
+        private int[] unitPrices = new int[1024];
+        private long[] epochSeconds = new long[1024];
+        private int size;
+        // 直前の行と同じ文字列ならハッシュ検索を省く
+        private String lastProduct;
+        private int lastProductId;
+        private String lastCategory;
+        private int lastCategoryId;
+
+        @Override
+        public void onRow(long lineNumber, String productName, String category,
+                          int quantity, int unitPrice, long epochSecond) {
+            add(productName, category, quantity, unitPrice, epochSecond);
+        }
+
+        public void add(String productName, String category, int quantity, int unitPrice, long epochSecond) {
+            if (productName != lastProduct) {
+                lastProductId = products.intern(productName);
+                lastProduct = productName;
+            }
+            if (category != lastCategory) {
+                lastCategoryId = categories.intern(category);
+                lastCategory = category;
+            }
+            ensureCapacity(size + 1);
+            addEncoded(lastProductId, lastCategoryId, quantity, unitPrice, epochSecond);
+        }
+
+        private void addEncoded(int productId, int categoryId, int quantity, int unitPrice, long epochSecond) {
+            productIds[size] = productId;
+            categoryIds[size] = categoryId;
+            quantities[size] = quantity;
+            unitPrices[size] = unitPrice;
+            epochSeconds[size] = epochSecond;
+            size++;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= productIds.length) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, productIds.length + (productIds.length >> 1));
+            productIds = Arrays.copyOf(productIds, newCapacity);
+            categoryIds = Arrays.copyOf(categoryIds, newCapacity);
+            quantities = Arrays.copyOf(quantities, newCapacity);
+            unitPrices = Arrays.copyOf(unitPrices, newCapacity);
+            epochSeconds = Arrays.copyOf(epochSeconds, newCapacity);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public SalesTable build() {
+            return new SalesTable(products, categories,
+                    Arrays.copyOf(productIds, size), Arrays.copyOf(categoryIds, size),
+                    Arrays.copyOf(quantities, size), Arrays.copyOf(unitPrices, size),
+                    Arrays.copyOf(epochSeconds, size), size);
+        }
+    }
+
+    // ===== 行カーソル =====
+
+    /**
+     * 先頭から1行ずつ進むカーソル（next()がtrueを返した後に各列の値を読む）
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public class Cursor {
+        private int row = -1;
+
+        public boolean next() {
+            return ++row < size;
+        }
+
+        // 任意の行へ移動する（インデックスや検索結果の行番号を辿るときに使用）
+        public void moveTo(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("行番号が範囲外です: " + row);
+            }
+            this.row = row;
+        }
+
+        public int getRow() { return row; }
+        public int getProductId() { return productIds[row]; }
+        public int getCategoryId() { return categoryIds[row]; }
+        public String getProductName() { return products.valueOf(productIds[row]); }
+        public String getCategory() { return categories.valueOf(categoryIds[row]); }
+        public int getQuantity() { return quantities[row]; }
+        public int getUnitPrice() { return unitPrices[row]; }
+        public long getEpochSecond() { return epochSeconds[row]; }
+        public long getAmount() { return (long) quantities[row] * unitPrices[row]; }
+
+        public LocalDateTime getSaleDateTime() {
+            return LocalDateTime.ofEpochSecond(epochSeconds[row], 0, ZoneOffset.UTC);
+        }
+
+        public SaleRecord toRecord() {
+            return new SaleRecord(getProductName(), getCategory(), getQuantity(), getUnitPrice(), getSaleDateTime());
+        }
+    }
+
+    // ===== 列に対するクエリ =====
+
+    /**
+     * カテゴリIDごとの総売上（個数×単価）。longで集計するためオーバーフローしない
+     */
+    public long[] categoryRevenue() {
+        long[] totals = new long[categories.size()];
+        for (int row = 0; row < size; row++) {
+            int id = categoryIds[row];
+            totals[id] = Math.addExact(totals[id], (long) quantities[row] * unitPrices[row]);
+        }
+        return totals;
+    }
+
+    /**
+     * カテゴリ名ごとの総売上（辞書の登録順）
+     */
+    public Map<String, Long> categoryTotals() {
+        long[] totals = categoryRevenue();
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < totals.length; id++) {
+            result.put(categories.valueOf(id), totals[id]);
+        }
+        return result;
+    }
+
+    /**
+     * 指定日時以降の行を販売日時の新しい順で返す
+     */
+    public int[] rowsAtOrAfterNewestFirst(LocalDateTime cutoff) {
+        long cutoffSecond = cutoff.toEpochSecond(ZoneOffset.UTC);
+        int[] rows = new int[size];
+        int count = 0;
+        long maxSecond = Long.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            if (epochSeconds[row] >= cutoffSecond) {
+                rows[count++] = row;
+                maxSecond = Math.max(maxSecond, epochSeconds[row]);
+            }
+        }
+        rows = Arrays.copyOf(rows, count);
+        if (count > 1 && maxSecond - cutoffSecond < (1L << 31)) {
+            // (経過秒 << 32 | 反転した行番号) をlongのまま昇順ソートし、逆順に取り出す（比較器やボクシングなし）
+            // 行番号を反転しておくことで、同じ日時の行は元の順序のまま並ぶ
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = ((epochSeconds[rows[i]] - cutoffSecond) << 32) | (Integer.MAX_VALUE - rows[i]);
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < count; i++) {
+                rows[i] = Integer.MAX_VALUE - (int) keys[count - 1 - i];
+            }
+        } else if (count > 1) {
+            rows = Arrays.stream(rows).boxed()
+                    .sorted((a, b) -> Long.compare(epochSeconds[b], epochSeconds[a]))
+                    .mapToInt(Integer::intValue).toArray();
+        }
+        return rows;
+    }
+
+    /**
+     * 売上個数が最大の行（同数なら先の行）。行がなければ-1
+     */
+    public int maxQuantityRow() {
+        int best = -1;
+        int bestQuantity = Integer.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            if (quantities[row] > bestQuantity) {
+                bestQuantity = quantities[row];
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    // ===== 列へのアクセス（集計エンジンなどから使用。配列は変更しないこと） =====
+
+    public int size() { return size; }
+    public StringDictionary getProducts() { return products; }
+    public StringDictionary getCategories() { return categories; }
+    int[] productIdColumn() { return productIds; }
+    int[] categoryIdColumn() { return categoryIds; }
+    int[] quantityColumn() { return quantities; }
+    int[] unitPriceColumn() { return unitPrices; }
+    long[] epochSecondColumn() { return epochSeconds; }
+}
@@ -0,0 +1,223 @@
+package kadai0718;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+// 販売日時の昇順に並べた行番号の配列（時刻インデックス）
+// 1度だけ基数ソートで作成し、期間の問い合わせは二分探索で範囲を求めるだけなので再ソートが不要になる。
+// 同じ日時の行は元の行順を保つ（昇順・降順どちらで辿っても同時刻の行は元の順序で返す）。
+public class SalesTimeIndex {
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private final long[] epochSeconds;  // テーブルの列（参照のみ）
+    private final int[] sortedRows;     // 販売日時の昇順に並べた行番号
+
+    private SalesTimeIndex(long[] epochSeconds, int[] sortedRows) {
+        this.epochSeconds = epochSeconds;
+        this.sortedRows = sortedRows;
+    }
+
+    /**
+     * テーブルの販売日時列からインデックスを作る
+     */
+    public static SalesTimeIndex build(SalesTable table) {
+        long[] seconds = table.epochSecondColumn();
+        return new SalesTimeIndex(seconds, sortRows(seconds, table.size()));
+    }
+
+    /**
+     * LSD基数ソート（16ビットずつ、安定）で行番号の並びを求める
+     * 最小値からの差だけをソートするので、期間が短いほどパス数が減る（1年分なら2パス）
+     */
+    static int[] sortRows(long[] seconds, int size) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        if (size < 2) {
+            return rows;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, seconds[i]);
+            max = Math.max(max, seconds[i]);
+        }
+        long range = max - min;
+        if (range < 0) {
+            range = Long.MAX_VALUE; // 差がlongを超える（実際の日時ではまず起きない）
+        }
+        int passes = Math.max(1, (64 - Long.numberOfLeadingZeros(range) + RADIX_BITS - 1) / RADIX_BITS);
+
+        int[] counts = new int[RADIX];
+        int[] rowBuffer = new int[size];
+        if (passes <= 2) {
+            // 差が32ビットに収まる場合はキーを行番号と一緒に持ち回り、毎パスの間接参照をなくす
+            int[] keys = new int[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = (int) (seconds[i] - min);
+            }
+            int[] keyBuffer = new int[size];
+            for (int pass = 0; pass < passes; pass++) {
+                int shift = pass * RADIX_BITS;
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < size; i++) {
+                    counts[(keys[i] >>> shift) & (RADIX - 1)]++;
+                }
+                prefixSums(counts);
+                for (int i = 0; i < size; i++) {
+                    int digit = (keys[i] >>> shift) & (RADIX - 1);
+                    int target = counts[digit]++;
+                    keyBuffer[target] = keys[i];
+                    rowBuffer[target] = rows[i];
+                }
+                int[] swapKeys = keys;
+                keys = keyBuffer;
+                keyBuffer = swapKeys;
+                int[] swapRows = rows;
+                rows = rowBuffer;
+                rowBuffer = swapRows;
+            }
+        } else {
+            // 差が大きい場合は毎パス元の列から桁を読む（追加メモリを抑える）
+            for (int pass = 0; pass < passes; pass++) {
+                int shift = pass * RADIX_BITS;
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < size; i++) {
+                    counts[(int) (((seconds[rows[i]] - min) >>> shift) & (RADIX - 1))]++;
+                }
+                prefixSums(counts);
+                for (int i = 0; i < size; i++) {
+                    int digit = (int) (((seconds[rows[i]] - min) >>> shift) & (RADIX - 1));
+                    rowBuffer[counts[digit]++] = rows[i];
+                }
+                int[] swap = rows;
+                rows = rowBuffer;
+                rowBuffer = swap;
+            }
+        }
+        return rows;
+    }
+
+    // 出現数を書き込み開始位置に変換する
+    private static void prefixSums(int[] counts) {
+        int sum = 0;
+        for (int d = 0; d < counts.length; d++) {
+            int c = counts[d];
+            counts[d] = sum;
+            sum += c;
+        }
+    }
+
+    /**
+     * 期間 [from, to) に含まれる行の範囲（fromやtoがnullなら制限なし）
+     */
+    public Range range(LocalDateTime fromInclusive, LocalDateTime toExclusive) {
+        int start = fromInclusive == null ? 0 : lowerBound(fromInclusive.toEpochSecond(ZoneOffset.UTC));
+        int end = toExclusive == null ? sortedRows.length : lowerBound(toExclusive.toEpochSecond(ZoneOffset.UTC));
+        return new Range(start, Math.max(start, end));
+    }
+
+    // 販売日時がkey以上となる最初の位置
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = sortedRows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochSeconds[sortedRows[mid]] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return sortedRows.length;
+    }
+
+    // インデックス上の連続した範囲 [start, end)
+    public class Range {
+        private final int start;
+        private final int end;
+
+        private Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int size() {
+            return end - start;
+        }
+
+        /**
+         * 古い順に行番号を返すイテレーター
+         */
+        public PrimitiveIterator.OfInt ascending() {
+            return new PrimitiveIterator.OfInt() {
+                private int position = start;
+
+                @Override
+                public boolean hasNext() {
+                    return position < end;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (position >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return sortedRows[position++];
+                }
+            };
+        }
+
+        /**
+         * 新しい順に行番号を返すイテレーター（同じ日時の行は元の行順）
+         */
+        public PrimitiveIterator.OfInt descending() {
+            return new PrimitiveIterator.OfInt() {
+                private int runEnd = end;      // 処理中の同時刻グループの終端（排他的）
+                private int position = end;    // 次に返す位置
+                private int runStart = end;
+
+                @Override
+                public boolean hasNext() {
+                    return position < runEnd || runStart > start;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (position >= runEnd) {
+                        if (runStart <= start) {
+                            throw new NoSuchElementException();
+                        }
+                        // 1つ前の同時刻グループを探し、その先頭から順に返す
+                        runEnd = runStart;
+                        long key = epochSeconds[sortedRows[runEnd - 1]];
+                        runStart = runEnd - 1;
+                        while (runStart > start && epochSeconds[sortedRows[runStart - 1]] == key) {
+                            runStart--;
+                        }
+                        position = runStart;
+                    }
+                    return sortedRows[position++];
+                }
+            };
+        }
+
+        public int[] toArray(boolean newestFirst) {
+            int[] result = new int[size()];
+            PrimitiveIterator.OfInt it = newestFirst ? descending() : ascending();
+            for (int i = 0; i < result.length; i++) {
+                result[i] = it.nextInt();
+            }
+            return result;
+        }
+    }
+}
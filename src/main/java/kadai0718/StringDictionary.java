@@ -0,0 +1,48 @@
+package kadai0718;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 文字列と連番IDを相互に変換する辞書 (辞書符号化用)
+// 同じ文字列には常に同じIDを割り当て、IDは0から順に振る
+public class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * 文字列のIDを返す（初出なら新しいIDを割り当てる）
+     */
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * 文字列のIDを返す（未登録なら-1）
+     */
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    public String valueOf(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    // 登録順の値一覧（読み取り専用）
+    public List<String> values() {
+        return Collections.unmodifiableList(values);
+    }
+}
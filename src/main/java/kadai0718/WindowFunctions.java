@@ -0,0 +1,384 @@
+package kadai0718;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// 時系列のウィンドウ関数（移動合計・移動平均・累計・前の値(lag)・後の値(lead)・差分）
+// キー（カテゴリなど）ごとに時刻順に並んだ値を1行ずつ受け取り、キーごとのリングバッファだけで結果を出す。
+// 並べ替えや部分リストの再走査はしないので、n行に対してO(n)、メモリは「ウィンドウの長さ×キーの数」で済む。
+// 演算子は1行ずつ渡せばストリーム処理の途中にそのまま置け、applyで配列にまとめて適用することもできる。
+public class WindowFunctions {
+
+    private WindowFunctions() {
+    }
+
+    // 結果を受け取るコールバック。positionは演算子に渡された順番（0から）、結果が定義されない行はNaN
+    @FunctionalInterface
+    public interface Output {
+        void accept(long position, int key, long time, long value, double result);
+    }
+
+    // ===== 演算子 =====
+
+    /**
+     * 直近rows行（その行を含む）の合計。先頭のrows-1行はある分だけで計算する
+     */
+    public static Operator movingSum(int rows) {
+        return new MovingWindow(rows, false);
+    }
+
+    /**
+     * 直近rows行（その行を含む）の平均。先頭のrows-1行はある分だけで計算する
+     */
+    public static Operator movingAverage(int rows) {
+        return new MovingWindow(rows, true);
+    }
+
+    /**
+     * キーごとの累計
+     */
+    public static Operator cumulativeSum() {
+        return new CumulativeSum();
+    }
+
+    /**
+     * offset行前の値（なければNaN）
+     */
+    public static Operator lag(int offset) {
+        return new Lag(offset, false);
+    }
+
+    /**
+     * offset行前との差（前日比など。なければNaN）
+     */
+    public static Operator difference(int offset) {
+        return new Lag(offset, true);
+    }
+
+    /**
+     * offset行後の値。後の行が届くまで結果を出せないので、出力はoffset行遅れる。
+     * 最後まで後の行が来なかった行は、finishでNaNとして出す
+     */
+    public static Operator lead(int offset) {
+        return new Lead(offset);
+    }
+
+    // 演算子の共通部分（キーごとの状態を辞書IDを添字にした配列で持つ）
+    public abstract static class Operator {
+        private long position;
+        private long[] lastTimes = new long[0];
+        long[] seen = new long[0];   // キーごとに受け取った行数
+
+        /**
+         * 1行を受け取り、出せるようになった結果をoutに渡す
+         * 同じキーの中では時刻が減らないこと
+         */
+        public final void accept(int key, long time, long value, Output out) {
+            if (key >= seen.length) {
+                int capacity = Math.max(key + 1, seen.length * 2);
+                int old = seen.length;
+                seen = Arrays.copyOf(seen, capacity);
+                lastTimes = Arrays.copyOf(lastTimes, capacity);
+                Arrays.fill(lastTimes, old, capacity, Long.MIN_VALUE);
+                grow(capacity);
+            }
+            if (time < lastTimes[key]) {
+                throw new IllegalArgumentException("キー" + key + "の時刻が逆行しています: " + time + " < " + lastTimes[key]);
+            }
+            lastTimes[key] = time;
+            process(position++, key, time, value, out);
+            seen[key]++;
+        }
+
+        /**
+         * 入力の終わりで、保留している行があれば出す
+         */
+        public void finish(Output out) {
+        }
+
+        // これまでに受け取った行数
+        public long getPosition() { return position; }
+
+        abstract void grow(int capacity);
+
+        abstract void process(long position, int key, long time, long value, Output out);
+    }
+
+    private static void checkLength(int length, String name) {
+        if (length < 1) {
+            throw new IllegalArgumentException(name + "は1以上を指定してください: " + length);
+        }
+    }
+
+    private static class MovingWindow extends Operator {
+        private final int rows;
+        private final boolean average;
+        private long[][] rings = new long[0][];
+        private long[] sums = new long[0];
+
+        MovingWindow(int rows, boolean average) {
+            checkLength(rows, "ウィンドウの行数");
+            this.rows = rows;
+            this.average = average;
+        }
+
+        @Override
+        void grow(int capacity) {
+            rings = Arrays.copyOf(rings, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+        }
+
+        @Override
+        void process(long position, int key, long time, long value, Output out) {
+            long[] ring = rings[key];
+            if (ring == null) {
+                ring = rings[key] = new long[rows];
+            }
+            long n = seen[key];
+            int slot = (int) (n % rows);
+            if (n >= rows) {
+                sums[key] -= ring[slot]; // ウィンドウから外れる値
+            }
+            ring[slot] = value;
+            sums[key] += value;
+            double result = average ? (double) sums[key] / Math.min(n + 1, rows) : sums[key];
+            out.accept(position, key, time, value, result);
+        }
+    }
+
+    private static class CumulativeSum extends Operator {
+        private long[] sums = new long[0];
+
+        @Override
+        void grow(int capacity) {
+            sums = Arrays.copyOf(sums, capacity);
+        }
+
+        @Override
+        void process(long position, int key, long time, long value, Output out) {
+            sums[key] = Math.addExact(sums[key], value);
+            out.accept(position, key, time, value, sums[key]);
+        }
+    }
+
+    private static class Lag extends Operator {
+        private final int offset;
+        private final boolean difference;
+        private long[][] rings = new long[0][];
+
+        Lag(int offset, boolean difference) {
+            checkLength(offset, "ずらす行数");
+            this.offset = offset;
+            this.difference = difference;
+        }
+
+        @Override
+        void grow(int capacity) {
+            rings = Arrays.copyOf(rings, capacity);
+        }
+
+        @Override
+        void process(long position, int key, long time, long value, Output out) {
+            long[] ring = rings[key];
+            if (ring == null) {
+                ring = rings[key] = new long[offset];
+            }
+            long n = seen[key];
+            int slot = (int) (n % offset);
+            double result = Double.NaN;
+            if (n >= offset) {
+                result = difference ? value - ring[slot] : ring[slot];
+            }
+            ring[slot] = value;
+            out.accept(position, key, time, value, result);
+        }
+    }
+
+    private static class Lead extends Operator {
+        private final int offset;
+        // キーごとに結果待ちの行（順番・時刻・値）を持つリングバッファ
+        private long[][] positions = new long[0][];
+        private long[][] times = new long[0][];
+        private long[][] values = new long[0][];
+
+        Lead(int offset) {
+            checkLength(offset, "ずらす行数");
+            this.offset = offset;
+        }
+
+        @Override
+        void grow(int capacity) {
+            positions = Arrays.copyOf(positions, capacity);
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void process(long position, int key, long time, long value, Output out) {
+            if (positions[key] == null) {
+                positions[key] = new long[offset];
+                times[key] = new long[offset];
+                values[key] = new long[offset];
+            }
+            long n = seen[key];
+            int slot = (int) (n % offset);
+            if (n >= offset) {
+                // offset行前の行の結果がこの行の値で決まる
+                out.accept(positions[key][slot], key, times[key][slot], values[key][slot], value);
+            }
+            positions[key][slot] = position;
+            times[key][slot] = time;
+            values[key][slot] = value;
+        }
+
+        @Override
+        public void finish(Output out) {
+            for (int key = 0; key < seen.length; key++) {
+                long n = seen[key];
+                for (long i = Math.max(0, n - offset); i < n; i++) {
+                    int slot = (int) (i % offset);
+                    out.accept(positions[key][slot], key, times[key][slot], values[key][slot], Double.NaN);
+                }
+                seen[key] = 0; // 二重に出さないよう保留分を空にする
+            }
+        }
+    }
+
+    // ===== 配列への一括適用 =====
+
+    /**
+     * 行ごとの結果を入力と同じ並びの配列で返す（演算子は新しく作ったものを渡すこと）
+     */
+    public static double[] apply(Operator operator, int[] keys, long[] times, long[] values, int size) {
+        if (operator.getPosition() != 0) {
+            throw new IllegalStateException("使用済みの演算子は渡せません");
+        }
+        double[] results = new double[size];
+        Output output = (position, key, time, value, result) -> results[(int) position] = result;
+        for (int row = 0; row < size; row++) {
+            operator.accept(keys[row], times[row], values[row], output);
+        }
+        operator.finish(output);
+        return results;
+    }
+
+    // ===== 日別の売上系列 =====
+
+    // 日別の売上を受け取るコールバック（日付順、同じ日の中はキー順）。epochDayは1970-01-01からの日数
+    @FunctionalInterface
+    public interface DailyValue {
+        void accept(long epochDay, int key, long revenue);
+    }
+
+    /**
+     * カテゴリまたは商品ごとの日別売上を、日付順に1件ずつconsumerへ渡す
+     * 行を時刻順にたどりながら当日分だけをキーごとに足し込み、日が変わったところで前日分を出す。
+     * 売上のない日は、そのキーの最初の売上日からテーブル全体の最後の売上日まで0として出す
+     * （キー自身の最後の売上日で止めないので、どのキーの系列も同じ日で終わり、移動平均の行数が日数と一致する）。
+     * 保持するのは当日のキーごとの合計だけなので、日付の範囲が広くても（外れ値の日付があっても）メモリは増えない。
+     * 一方、処理時間は O(行数 + 最初から最後までの日数 × キー数) で、外れ値の日付があると空白の日ごとに
+     * 全キーをたどるぶん長くなる（呼び出し回数もその日数×始まっているキー数になる）
+     */
+    public static void dailyRevenue(SalesTable table, SalesAggregator.Dimension dimension, DailyValue consumer) {
+        int[] keyColumn = switch (dimension) {
+            case CATEGORY -> table.categoryIdColumn();
+            case PRODUCT -> table.productIdColumn();
+            default -> throw new IllegalArgumentException("カテゴリか商品を指定してください: " + dimension);
+        };
+        int size = table.size();
+        if (size == 0) {
+            return;
+        }
+        long[] seconds = table.epochSecondColumn();
+        int[] quantities = table.quantityColumn();
+        int[] unitPrices = table.unitPriceColumn();
+        int[] order = isSortedByTime(seconds, size) ? null : SalesTimeIndex.sortRows(seconds, size);
+
+        int keyCount = dimension == SalesAggregator.Dimension.CATEGORY
+                ? table.getCategories().size() : table.getProducts().size();
+        long[] totals = new long[keyCount];        // 当日のキーごとの合計
+        boolean[] started = new boolean[keyCount]; // 最初の売上日を過ぎたキー
+        long currentDay = Math.floorDiv(seconds[order == null ? 0 : order[0]], 86400L);
+        for (int i = 0; i < size; i++) {
+            int row = order == null ? i : order[i];
+            long day = Math.floorDiv(seconds[row], 86400L);
+            if (day != currentDay) {
+                emitDay(currentDay, totals, started, consumer);
+                // 売上のなかった日は、始まっているキーに0を出す（totalsは0に戻っている）
+                for (long gap = currentDay + 1; gap < day; gap++) {
+                    emitDay(gap, totals, started, consumer);
+                }
+                currentDay = day;
+            }
+            int key = keyColumn[row];
+            started[key] = true;
+            totals[key] = Math.addExact(totals[key], (long) quantities[row] * unitPrices[row]);
+        }
+        emitDay(currentDay, totals, started, consumer);
+    }
+
+    private static boolean isSortedByTime(long[] seconds, int size) {
+        for (int row = 1; row < size; row++) {
+            if (seconds[row] < seconds[row - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void emitDay(long day, long[] totals, boolean[] started, DailyValue consumer) {
+        for (int key = 0; key < totals.length; key++) {
+            if (started[key]) {
+                consumer.accept(day, key, totals[key]);
+                totals[key] = 0;
+            }
+        }
+    }
+
+    /**
+     * カテゴリ別の日次推移（売上・移動平均・累計・前日比）を表示する
+     * 日別の売上を演算子に1件ずつ流すだけで、系列全体は保持しない。
+     * 売上がなく移動平均も0になった日（長く売上のない期間）は表示を省く
+     */
+    public static void printDailyReport(SalesTable table, int windowDays) {
+        StringDictionary categories = table.getCategories();
+        Operator average = movingAverage(windowDays);
+        Operator total = cumulativeSum();
+        Operator change = difference(1);
+        double[] results = new double[3];
+        Output averageOut = (position, key, time, value, result) -> results[0] = result;
+        Output totalOut = (position, key, time, value, result) -> results[1] = result;
+        Output changeOut = (position, key, time, value, result) -> results[2] = result;
+        long[] omitted = new long[1];
+        dailyRevenue(table, SalesAggregator.Dimension.CATEGORY, (day, key, revenue) -> {
+            average.accept(key, day, revenue, averageOut);
+            total.accept(key, day, revenue, totalOut);
+            change.accept(key, day, revenue, changeOut);
+            if (revenue == 0 && results[0] == 0) {
+                omitted[0]++;
+                return;
+            }
+            String difference = Double.isNaN(results[2]) ? "-" : String.format("%+d円", (long) results[2]);
+            System.out.printf("  %s %s: 売上 %d円, %d日平均 %.0f円, 累計 %d円, 前日比 %s%n",
+                    LocalDate.ofEpochDay(day), categories.valueOf(key), revenue,
+                    windowDays, results[0], (long) results[1], difference);
+        });
+        if (omitted[0] > 0) {
+            System.out.println("  (売上のない期間の " + omitted[0] + "行は省略)");
+        }
+    }
+
+    // 使い方: java kadai0718.WindowFunctions <売上CSV> [移動平均の日数]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("使い方: java kadai0718.WindowFunctions <売上CSV> [移動平均の日数]");
+            return;
+        }
+        RejectedRowSink rejections = new RejectedRowSink();
+        SalesTable table = SalesTable.loadParallel(Paths.get(args[0]), rejections);
+        rejections.printSummary();
+        printDailyReport(table, args.length > 1 ? Integer.parseInt(args[1]) : 7);
+    }
+}